@@ -0,0 +1,102 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.domain.ImportResult;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import com.acme.ecommerce.service.CatalogImportServiceImpl;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// A million-row CSV feed into an in-memory H2 product table, one whole import per measurement.
+// The table is emptied before each iteration, so every run inserts rather than updates.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CatalogImportBenchmark {
+
+    private static final int ROWS = 1000000;
+
+    @Param({"1", "4"})
+    int threads;
+
+    File feed;
+    DataSource dataSource;
+    JdbcTemplate jdbcTemplate;
+    ThreadPoolTaskExecutor executor;
+    CatalogImportServiceImpl importer;
+
+    @Setup
+    public void setup() throws IOException {
+        feed = File.createTempFile("catalog", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(feed.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n");
+            for (int id = 1; id <= ROWS; id++) {
+                writer.write(id + ",Product " + id + ",\"Description of product " + id + ", in stock\","
+                        + "sm_" + id + ".jpg," + id + ".jpg," + (id % 1000) + ".99," + (id % 50) + "\n");
+            }
+        }
+
+        dataSource = new DataSource();
+        dataSource.setUrl("jdbc:h2:mem:catalogbench;DB_CLOSE_DELAY=-1");
+        dataSource.setMaxActive(threads + 1);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table product (product_id bigint auto_increment primary key, "
+                + "name varchar(255), desc varchar(255), thumb_image_name varchar(255), "
+                + "full_image_name varchar(255), price decimal(19,2), quantity integer not null)");
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.initialize();
+        StaticApplicationContext publisher = new StaticApplicationContext();
+        publisher.refresh();
+        importer = new CatalogImportServiceImpl(dataSource, new DataSourceTransactionManager(dataSource), executor,
+                publisher, threads, 1000, "");
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyTable() {
+        jdbcTemplate.execute("truncate table product");
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+        jdbcTemplate.execute("drop table product");
+        dataSource.close();
+        feed.delete();
+    }
+
+    @Benchmark
+    public ImportResult importMillionRows() throws IOException {
+        try (InputStream in = new FileInputStream(feed)) {
+            return importer.importFeed(in, Format.CSV);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.service.OrderNumberServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Order ids per second on one node, alone and with threads contending for the shared counter.
+// blockSize 1 is a CAS per id, the default 64 shows what claiming blocks saves under contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderNumberBenchmark {
+
+    @Param({"1", "64"})
+    int blockSize;
+
+    OrderNumberServiceImpl orderNumbers;
+
+    @Setup
+    public void setup() {
+        orderNumbers = new OrderNumberServiceImpl(1, blockSize, null);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextId() {
+        return orderNumbers.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long nextIdContended() {
+        return orderNumbers.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String nextOrderNumber() {
+        return orderNumbers.nextOrderNumber();
+    }
+}
@@ -0,0 +1,89 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.domain.PriceCalculator;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.acme.ecommerce.controller.WebConstants.COST_PER_ITEM_CENTS;
+
+// Checkout pricing (subtotal, 10% coupon, per-item shipping): the old per-line BigDecimal arithmetic
+// against long cents. Run with -prof gc to compare gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingBenchmark {
+
+    // the constant as it was, binary-float constructor included
+    private static final BigDecimal COST_PER_ITEM = new BigDecimal(2.58);
+    private static final int COUPON_DISCOUNT_BASIS_POINTS = 1000;
+
+    @Param({"1", "10", "100"})
+    int lines;
+
+    Purchase purchase;
+
+    @Setup
+    public void setup() {
+        purchase = new Purchase();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long id = 1; id <= lines; id++) {
+            Product product = new Product();
+            product.setId(id);
+            product.setPrice(BigDecimal.valueOf(random.nextInt(100, 200000), 2));
+            purchase.addProductPurchase(product, random.nextInt(1, 5));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        BigDecimal subTotal = new BigDecimal(0);
+        for (ProductPurchase pp : purchase.getProductPurchases()) {
+            subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
+        }
+        subTotal = subTotal.multiply(new BigDecimal(0.9));
+
+        BigDecimal shippingCost = new BigDecimal(0);
+        for (ProductPurchase pp : purchase.getProductPurchases()) {
+            shippingCost = shippingCost.add(new BigDecimal(0).add(COST_PER_ITEM.multiply(new BigDecimal(pp.getQuantity()))));
+        }
+        return subTotal.add(shippingCost);
+    }
+
+    @Benchmark
+    public long fixedPoint() {
+        long subTotal = 0;
+        int items = 0;
+        for (ProductPurchase pp : purchase.getProductPurchases()) {
+            subTotal += PriceCalculator.lineTotal(pp.getProduct().getPriceCents(), pp.getQuantity());
+            items += pp.getQuantity();
+        }
+        subTotal = PriceCalculator.percentOff(subTotal, COUPON_DISCOUNT_BASIS_POINTS);
+        return subTotal + PriceCalculator.lineTotal(COST_PER_ITEM_CENTS, items);
+    }
+
+    // what the checkout pages actually do now: read the running totals kept by the cart
+    @Benchmark
+    public long runningTotals() {
+        long subTotal = PriceCalculator.percentOff(purchase.getSubTotalCents(), COUPON_DISCOUNT_BASIS_POINTS);
+        return subTotal + PriceCalculator.lineTotal(COST_PER_ITEM_CENTS, purchase.getItemCount());
+    }
+}
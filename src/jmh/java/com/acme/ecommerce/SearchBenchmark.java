@@ -0,0 +1,83 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.service.SearchServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Search and typeahead latency over a generated catalog. SampleTime reports the percentiles (p99 included).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final String[] WORDS = ("silver fork spoon knife frog garden green plastic steel wooden bamboo "
+            + "kitchen table chair lamp cup plate bowl glass mug").split(" ");
+
+    @Param({"1000", "100000"})
+    int products;
+
+    SearchServiceImpl searchService;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        List<Product> catalog = new ArrayList<Product>(products);
+        for (long id = 1; id <= products; id++) {
+            Product product = new Product();
+            product.setId(id);
+            product.setName(word(random) + " " + word(random) + " " + random.nextInt(products));
+            StringBuilder desc = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                desc.append(word(random)).append(random.nextInt(100)).append(' ');
+            }
+            product.setDesc(desc.toString());
+            product.setPrice(BigDecimal.ONE);
+            catalog.add(product);
+        }
+        // only findAll is called, to build the index
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> catalog);
+        searchService = new SearchServiceImpl(repository);
+        searchService.rebuild();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    @Benchmark
+    public List<Product> searchWord() {
+        return searchService.search("garden", 50);
+    }
+
+    @Benchmark
+    public List<Product> searchWordAndPrefix() {
+        return searchService.search("kitchen tab", 50);
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        return searchService.suggest("silver ga", 10);
+    }
+}
@@ -0,0 +1,91 @@
+package com.acme.ecommerce.controller;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.domain.ShoppingCart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ui.ExtendedModelMap;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cart line-item edits and the cart model every page gets, over carts of 1 to 100 lines. Each benchmark
+// leaves the cart as it found it, so the size holds for the whole run. Run with -prof gc for allocations.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartBenchmark {
+
+    @Param({"1", "10", "100"})
+    int lines;
+
+    ShoppingCart sCart;
+    Purchase purchase;
+    Product inCart;
+    Product notInCart;
+    int quantity;
+
+    @Setup
+    public void setup() {
+        purchase = new Purchase();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long id = 1; id <= lines; id++) {
+            purchase.addProductPurchase(product(id, random), random.nextInt(1, 5));
+        }
+        // the middle line, so lookups aren't helped by its position
+        inCart = purchase.findProductPurchase((long) (lines + 1) / 2).getProduct();
+        quantity = purchase.findProductPurchase(inCart.getId()).getQuantity();
+        notInCart = product(lines + 1, random);
+        sCart = new ShoppingCart();
+        sCart.setPurchase(purchase);
+    }
+
+    private static Product product(long id, ThreadLocalRandom random) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Product " + id);
+        product.setPrice(BigDecimal.valueOf(random.nextInt(100, 200000), 2));
+        return product;
+    }
+
+    // adding a product already in the cart merges into its line
+    @Benchmark
+    public ProductPurchase addToExistingLine() {
+        purchase.addProductPurchase(inCart, 1);
+        return purchase.updateProductPurchase(inCart.getId(), quantity);
+    }
+
+    @Benchmark
+    public ProductPurchase addAndRemoveLine() {
+        purchase.addProductPurchase(notInCart, 1);
+        return purchase.removeProductPurchase(notInCart.getId());
+    }
+
+    @Benchmark
+    public ProductPurchase updateLine() {
+        purchase.updateProductPurchase(inCart.getId(), quantity + 1);
+        return purchase.updateProductPurchase(inCart.getId(), quantity);
+    }
+
+    @Benchmark
+    public ExtendedModelMap addCart() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        CartController.addCart(model, sCart);
+        return model;
+    }
+}
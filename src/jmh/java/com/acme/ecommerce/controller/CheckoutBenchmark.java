@@ -0,0 +1,97 @@
+package com.acme.ecommerce.controller;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.acme.ecommerce.domain.Coupon;
+import com.acme.ecommerce.domain.CouponCode;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.CouponRepository;
+import com.acme.ecommerce.service.CouponServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The numbers every checkout page computes, over carts of 1 to 100 lines. Run with -prof gc (gradle jmh
+// does) for gc.alloc.rate.norm next to the times.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    @Param({"1", "10", "100"})
+    int lines;
+
+    CheckoutController controller;
+    Purchase purchase;
+    CouponCode couponCode;
+    String creditCardNumber = "4111111111111111";
+
+    @Setup
+    public void setup() {
+        // at logback.xml's debug level this would time the console, not the arithmetic
+        ((Logger) LoggerFactory.getLogger(CheckoutController.class)).setLevel(Level.INFO);
+
+        purchase = new Purchase();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long id = 1; id <= lines; id++) {
+            Product product = new Product();
+            product.setId(id);
+            product.setPrice(BigDecimal.valueOf(random.nextInt(100, 200000), 2));
+            purchase.addProductPurchase(product, random.nextInt(1, 5));
+        }
+
+        Coupon coupon = new Coupon();
+        coupon.setId(1L);
+        coupon.setCode("SAVE10");
+        coupon.setDiscountType(Coupon.DiscountType.PERCENT);
+        coupon.setDiscount(BigDecimal.TEN);
+        coupon.setStackable(false);
+        coupon.setActive(true);
+        coupon.setUpdatedAt(new Date());
+        // only findAll is called, on the first refresh
+        CouponRepository coupons = (CouponRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CouponRepository.class}, (proxy, method, args) -> Collections.singletonList(coupon));
+        CouponServiceImpl couponService = new CouponServiceImpl(coupons);
+        couponService.refresh();
+
+        controller = new CheckoutController();
+        controller.couponService = couponService;
+        couponCode = new CouponCode();
+        couponCode.setCode("SAVE10");
+    }
+
+    @Benchmark
+    public long computeSubtotal() {
+        return controller.computeSubtotal(purchase, couponCode);
+    }
+
+    @Benchmark
+    public long computeShippingCost() {
+        return controller.computeShippingCost(purchase);
+    }
+
+    @Benchmark
+    public String maskCardNumber() {
+        return CheckoutController.maskCardNumber(creditCardNumber);
+    }
+}
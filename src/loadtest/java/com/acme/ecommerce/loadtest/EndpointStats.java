@@ -0,0 +1,58 @@
+package com.acme.ecommerce.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Latencies of one endpoint in microseconds. Virtual users record into the Recorder without locking,
+// the reporter swaps out an interval histogram and folds it into the run's total.
+final class EndpointStats {
+
+    // up to a minute, three significant digits
+    private static final long HIGHEST_LATENCY_MICROS = 60000000L;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_LATENCY_MICROS, 3);
+    private final Histogram total = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+    private final AtomicLong errors = new AtomicLong();
+    private Histogram interval;
+    private long intervalErrors;
+    private long totalErrors;
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void record(long latencyMicros, boolean error) {
+        recorder.recordValue(Math.min(Math.max(latencyMicros, 0), HIGHEST_LATENCY_MICROS));
+        if (error) {
+            errors.incrementAndGet();
+        }
+    }
+
+    // reporter thread only: the requests since the last call, added to the totals as well
+    Histogram takeInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        intervalErrors = errors.getAndSet(0);
+        totalErrors += intervalErrors;
+        return interval;
+    }
+
+    long getIntervalErrors() {
+        return intervalErrors;
+    }
+
+    Histogram getTotal() {
+        return total;
+    }
+
+    long getTotalErrors() {
+        return totalErrors;
+    }
+}
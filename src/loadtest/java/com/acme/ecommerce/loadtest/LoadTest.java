@@ -0,0 +1,149 @@
+package com.acme.ecommerce.loadtest;
+
+import com.acme.ecommerce.Application;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Boots the application on a random port against the in-memory database and runs virtual shoppers through
+// the browse-cart-checkout flow, reporting throughput, latency percentiles and error rates per endpoint.
+// Run with: gradle loadTest [-Pusers=2000] [-Pthreads=200] [-Pduration=60] [-Pthink=1000] [-Pproducts=1000]
+public final class LoadTest {
+
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("users", 2000);
+        int threads = Integer.getInteger("threads", 200);
+        int durationSeconds = Integer.getInteger("duration", 60);
+        long thinkMillis = Long.getLong("think", 1000);
+        int products = Integer.getInteger("products", 1000);
+        int rampUpSeconds = Integer.getInteger("rampUp", 10);
+
+        System.setProperty("properties.home", System.getProperty("properties.home", "src/main/resources"));
+        // HttpURLConnection keeps only 5 idle connections per host by default, the rest would be reopened
+        System.setProperty("http.maxConnections", Integer.toString(threads));
+
+        // logback.xml's debug logging would measure the console, it can be turned back on with -Dlogging.level...
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "server.tomcat.max-threads=" + threads,
+                        "logging.level.com.acme.ecommerce=" + System.getProperty("logLevel", "INFO"))
+                .run(args);
+        try {
+            String baseUrl = "http://localhost:"
+                    + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            seedCatalog(baseUrl, products);
+            run(baseUrl, users, threads, durationSeconds, thinkMillis, products, rampUpSeconds);
+        } finally {
+            context.close();
+        }
+    }
+
+    // enough stock that no shopper runs out during the run
+    private static void seedCatalog(String baseUrl, int products) throws IOException {
+        StringBuilder feed = new StringBuilder("product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n");
+        for (int id = 1; id <= products; id++) {
+            feed.append(id).append(",Load product ").append(id).append(",Generated for the load test ").append(id)
+                    .append(",sm_fork.jpg,fork.jpg,").append(1 + id % 200).append(".99,100000000\n");
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/catalog/import").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "text/csv");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(feed.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = connection.getInputStream()) {
+            byte[] body = new byte[in.available() > 0 ? in.available() : 512];
+            int read = in.read(body);
+            System.out.println("Catalog seeded: " + new String(body, 0, Math.max(read, 0), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void run(String baseUrl, int users, int threads, int durationSeconds, long thinkMillis,
+                            int products, int rampUpSeconds) throws InterruptedException {
+        Map<String, EndpointStats> stats = new LinkedHashMap<String, EndpointStats>();
+        for (String endpoint : VirtualUser.endpoints()) {
+            stats.put(endpoint, new EndpointStats(endpoint));
+        }
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads);
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        System.out.println("Running " + users + " virtual users on " + threads + " client threads for "
+                + durationSeconds + "s against " + baseUrl);
+        List<VirtualUser> shoppers = new ArrayList<VirtualUser>(users);
+        for (int i = 0; i < users; i++) {
+            VirtualUser shopper = new VirtualUser(baseUrl, products, thinkMillis, stats, scheduler);
+            shoppers.add(shopper);
+            // spread over the ramp-up, so the sessions don't move in lock step
+            shopper.start(TimeUnit.SECONDS.toMillis(rampUpSeconds) * i / users);
+        }
+
+        long started = System.nanoTime();
+        long elapsed = 0;
+        while (elapsed < durationSeconds) {
+            long sleep = Math.min(REPORT_INTERVAL_SECONDS, durationSeconds - elapsed);
+            TimeUnit.SECONDS.sleep(sleep);
+            elapsed += sleep;
+            report("t=" + elapsed + "s", stats, sleep, true);
+        }
+
+        for (VirtualUser shopper : shoppers) {
+            shopper.stop();
+        }
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        report("total", stats, (System.nanoTime() - started) / 1000000000.0, false);
+    }
+
+    // an interval report covers the requests since the last one, the final one the whole run
+    private static void report(String title, Map<String, EndpointStats> stats, double seconds, boolean interval) {
+        System.out.println();
+        System.out.println(String.format("%-28s %9s %9s %7s %8s %8s %8s %8s %8s  (%s, ms)",
+                "endpoint", "requests", "req/s", "errors", "p50", "p90", "p99", "p99.9", "max", title));
+        long requests = 0;
+        long errors = 0;
+        for (EndpointStats endpoint : stats.values()) {
+            Histogram histogram = endpoint.takeInterval();
+            long endpointErrors = endpoint.getIntervalErrors();
+            if (!interval) {
+                histogram = endpoint.getTotal();
+                endpointErrors = endpoint.getTotalErrors();
+            }
+            long count = histogram.getTotalCount();
+            requests += count;
+            errors += endpointErrors;
+            System.out.println(String.format("%-28s %9d %9.1f %6.2f%% %8.1f %8.1f %8.1f %8.1f %8.1f",
+                    endpoint.getName(), count, count / seconds, percent(endpointErrors, count),
+                    millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0));
+        }
+        System.out.println(String.format("%-28s %9d %9.1f %6.2f%%", "all", requests, requests / seconds,
+                percent(errors, requests)));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
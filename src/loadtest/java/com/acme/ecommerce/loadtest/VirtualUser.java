@@ -0,0 +1,188 @@
+package com.acme.ecommerce.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// One shopper walking the whole flow, listing to emailed receipt, then starting over with a new session.
+// Each step is scheduled for a point in time and its latency is measured from that point, not from when a
+// client thread got round to sending it: a slow server delays the next requests, and that wait is counted
+// (coordinated omission) instead of silently thinning out the load.
+final class VirtualUser implements Runnable {
+
+    private static final String ADDRESS = "firstName=load&lastName=test&streetAddress=1+main+st&city=centerville"
+            + "&state=WA&zipCode=12345&country=USA&phoneNumber=1234567890&email=load%40example.com";
+    private static final String CARD = "&creditCardNumber=4111111111111111&creditCardName=load+test"
+            + "&creditCardExpMonth=5&creditCardExpYear=2030&creditCardCVC=123&billingAddressSame=true";
+
+    private static final Step[] FLOW = {
+            new Step("GET /product/", "GET", 200, null),
+            new Step("GET /product/detail/{id}", "GET", 200, null),
+            new Step("POST /cart/add", "POST", 302, "/product/"),
+            new Step("GET /checkout/coupon", "GET", 200, null),
+            new Step("POST /checkout/coupon", "POST", 302, "shipping"),
+            new Step("GET /checkout/shipping", "GET", 200, null),
+            new Step("POST /checkout/shipping", "POST", 302, "billing"),
+            new Step("GET /checkout/billing", "GET", 200, null),
+            new Step("POST /checkout/billing", "POST", 302, "confirmation"),
+            new Step("GET /checkout/confirmation", "GET", 200, null),
+            new Step("GET /checkout/email", "GET", 200, null)
+    };
+
+    private final String baseUrl;
+    private final int products;
+    private final long thinkMillis;
+    private final Map<String, EndpointStats> stats;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean stopped;
+    private int step;
+    private long productId;
+    private String sessionCookie;
+    private long intendedStart;
+
+    VirtualUser(String baseUrl, int products, long thinkMillis, Map<String, EndpointStats> stats,
+                ScheduledExecutorService scheduler) {
+        this.baseUrl = baseUrl;
+        this.products = products;
+        this.thinkMillis = thinkMillis;
+        this.stats = stats;
+        this.scheduler = scheduler;
+    }
+
+    static String[] endpoints() {
+        String[] names = new String[FLOW.length];
+        for (int i = 0; i < FLOW.length; i++) {
+            names[i] = FLOW[i].name;
+        }
+        return names;
+    }
+
+    void start(long delayMillis) {
+        intendedStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        if (stopped) {
+            return;
+        }
+        Step current = FLOW[step];
+        boolean error;
+        try {
+            error = !current.expected(send(current));
+        } catch (IOException ex) {
+            error = true;
+        }
+        stats.get(current.name).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart), error);
+
+        // a failed step leaves the session in no state to go on, so it starts over
+        step = error || step == FLOW.length - 1 ? 0 : step + 1;
+        if (step == 0) {
+            sessionCookie = null;
+        }
+        long think = (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * thinkMillis);
+        intendedStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(think);
+        scheduler.schedule(this, intendedStart - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private Response send(Step current) throws IOException {
+        switch (step) {
+            case 0:
+                return request(current, "/product/", null);
+            case 1:
+                productId = 1 + ThreadLocalRandom.current().nextInt(products);
+                return request(current, "/product/detail/" + productId, null);
+            case 2:
+                return request(current, "/cart/add", "productId=" + productId + "&quantity=1");
+            case 4:
+                return request(current, "/checkout/coupon", "code=SAVE10");
+            case 6:
+                return request(current, "/checkout/shipping", ADDRESS);
+            case 8:
+                return request(current, "/checkout/billing", ADDRESS + CARD);
+            default:
+                return request(current, current.name.substring(current.name.indexOf(' ') + 1), null);
+        }
+    }
+
+    private Response request(Step current, String path, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod(current.method);
+        if (sessionCookie != null) {
+            connection.setRequestProperty("Cookie", sessionCookie);
+        }
+        if (form != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        List<String> cookies = connection.getHeaderFields().get("Set-Cookie");
+        if (cookies != null) {
+            for (String cookie : cookies) {
+                if (cookie.startsWith("JSESSIONID=")) {
+                    sessionCookie = cookie.substring(0, cookie.indexOf(';') < 0 ? cookie.length() : cookie.indexOf(';'));
+                }
+            }
+        }
+        // the body is read to the end so the connection goes back to the keep-alive pool
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    // discarded
+                }
+            }
+        }
+        return new Response(status, connection.getHeaderField("Location"));
+    }
+
+    private static final class Step {
+
+        private final String name;
+        private final String method;
+        private final int status;
+        private final String redirect;
+
+        private Step(String name, String method, int status, String redirect) {
+            this.name = name;
+            this.method = method;
+            this.status = status;
+            this.redirect = redirect;
+        }
+
+        // a redirect back to the same form, or to /error, is a failed step
+        private boolean expected(Response response) {
+            return response.status == status
+                    && (redirect == null || response.location != null && response.location.endsWith(redirect));
+        }
+    }
+
+    private static final class Response {
+
+        private final int status;
+        private final String location;
+
+        private Response(int status, String location) {
+            this.status = status;
+            this.location = location;
+        }
+    }
+}
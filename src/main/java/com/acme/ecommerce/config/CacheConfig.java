@@ -0,0 +1,17 @@
+package com.acme.ecommerce.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.EntityManagerFactory;
+
+// Products and catalog pages are cached by Hibernate alone (see PersistenceConfig and ehcache-hibernate.xml):
+// a second, Spring-level copy had to be evicted separately and could serve rows the second-level cache had dropped.
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public HibernateCacheMetrics hibernateCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        return new HibernateCacheMetrics(entityManagerFactory);
+    }
+}
@@ -0,0 +1,71 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.service.CatalogExportService;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoint;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+
+import static com.acme.ecommerce.service.CatalogImportService.APPLICATION_NDJSON;
+import static com.acme.ecommerce.service.CatalogImportService.TEXT_CSV;
+
+// the feed partners pull. Each download holds a pooled connection and a cursor for the whole transfer,
+// so like the import it is a sensitive management endpoint, only registered when catalog.export.enabled
+public class CatalogExportEndpoint implements MvcEndpoint {
+
+    final Logger logger = LoggerFactory.getLogger(CatalogExportEndpoint.class);
+
+    private final CatalogExportService catalogExportService;
+
+    public CatalogExportEndpoint(CatalogExportService catalogExportService) {
+        this.catalogExportService = catalogExportService;
+    }
+
+    // written to the response while the cursor advances, never collected first
+    @RequestMapping(method = RequestMethod.GET)
+    public void export(@RequestParam(value = "format", defaultValue = "ndjson") String format,
+                       HttpServletResponse response) throws IOException {
+        Format exportFormat = Format.valueOf(format.toUpperCase(Locale.ROOT));
+        response.setContentType((exportFormat == Format.CSV ? TEXT_CSV : APPLICATION_NDJSON) + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"catalog." + exportFormat.name().toLowerCase(Locale.ROOT) + "\"");
+        long count = catalogExportService.export(response.getOutputStream(), exportFormat);
+        logger.debug("Exported {} products as {}", count, exportFormat);
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseBody
+    public String badFormat(Exception ex) {
+        logger.error(ex.getMessage());
+        return ex.getMessage();
+    }
+
+    @Override
+    public String getPath() {
+        return "/catalog-export";
+    }
+
+    @Override
+    public boolean isSensitive() {
+        return true;
+    }
+
+    @Override
+    public Class<? extends Endpoint<?>> getEndpointType() {
+        return null;
+    }
+}
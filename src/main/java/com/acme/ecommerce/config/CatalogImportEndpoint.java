@@ -0,0 +1,88 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.domain.ImportResult;
+import com.acme.ecommerce.service.CatalogImportService;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoint;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.acme.ecommerce.service.CatalogImportService.APPLICATION_NDJSON;
+import static com.acme.ecommerce.service.CatalogImportService.TEXT_CSV;
+
+// replaces the whole catalog, so it lives with the other management endpoints rather than on the
+// storefront: sensitive, moved along with management.port, and only registered when catalog.import.enabled
+public class CatalogImportEndpoint implements MvcEndpoint {
+
+    final Logger logger = LoggerFactory.getLogger(CatalogImportEndpoint.class);
+
+    private final CatalogImportService catalogImportService;
+
+    public CatalogImportEndpoint(CatalogImportService catalogImportService) {
+        this.catalogImportService = catalogImportService;
+    }
+
+    // the request body is streamed straight into the importer, it is never held in memory as a whole
+    @RequestMapping(method = RequestMethod.POST, consumes = TEXT_CSV, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ImportResult importCsv(InputStream feed) throws IOException {
+        logger.debug("Importing CSV catalog feed");
+        return catalogImportService.importFeed(feed, Format.CSV);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, consumes = APPLICATION_NDJSON,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ImportResult importNdjson(InputStream feed) throws IOException {
+        logger.debug("Importing NDJSON catalog feed");
+        return catalogImportService.importFeed(feed, Format.NDJSON);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ImportResult progress() {
+        return catalogImportService.getProgress();
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(IllegalStateException.class)
+    @ResponseBody
+    public String importRunning(Exception ex) {
+        logger.error(ex.getMessage());
+        return ex.getMessage();
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseBody
+    public String badFeed(Exception ex) {
+        logger.error(ex.getMessage());
+        return ex.getMessage();
+    }
+
+    @Override
+    public String getPath() {
+        return "/catalog-import";
+    }
+
+    @Override
+    public boolean isSensitive() {
+        return true;
+    }
+
+    @Override
+    public Class<? extends Endpoint<?>> getEndpointType() {
+        return null;
+    }
+}
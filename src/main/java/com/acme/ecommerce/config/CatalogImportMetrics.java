@@ -0,0 +1,32 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.domain.ImportResult;
+import com.acme.ecommerce.service.CatalogImportService;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// progress of the running catalog import, or the figures of the last one
+public class CatalogImportMetrics implements PublicMetrics {
+
+    private final CatalogImportService catalogImportService;
+
+    public CatalogImportMetrics(CatalogImportService catalogImportService) {
+        this.catalogImportService = catalogImportService;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        ImportResult progress = catalogImportService.getProgress();
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>("catalog.import.running", progress.isRunning() ? 1 : 0));
+        metrics.add(new Metric<Long>("catalog.import.rows.read", progress.getRowsRead()));
+        metrics.add(new Metric<Long>("catalog.import.rows.written", progress.getRowsWritten()));
+        metrics.add(new Metric<Long>("catalog.import.rows.rejected", progress.getRowsRejected()));
+        metrics.add(new Metric<Long>("catalog.import.rate", progress.getRowsPerSecond()));
+        return metrics;
+    }
+}
@@ -0,0 +1,77 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.service.CatalogImportService;
+import com.acme.ecommerce.service.ReceiptService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class ExecutorConfig {
+
+    @Value("${thumbnail.threads:2}")
+    private int thumbnailThreads;
+
+    @Value("${thumbnail.queueCapacity:200}")
+    private int thumbnailQueueCapacity;
+
+    @Value("${receipt.threads:2}")
+    private int receiptThreads;
+
+    @Value("${receipt.queueCapacity:100}")
+    private int receiptQueueCapacity;
+
+    @Value("${catalog.import.threads:4}")
+    private int importThreads;
+
+    // image resizing is CPU bound, keep it off the request threads and bounded
+    @Bean
+    public ThreadPoolTaskExecutor thumbnailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(thumbnailThreads);
+        executor.setMaxPoolSize(thumbnailThreads);
+        executor.setQueueCapacity(thumbnailQueueCapacity);
+        executor.setThreadNamePrefix("thumbnail-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    // receipts are rendered off the request threads; a full queue is answered with 503, not queued forever
+    @Bean
+    public ThreadPoolTaskExecutor receiptExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(receiptThreads);
+        executor.setMaxPoolSize(receiptThreads);
+        executor.setQueueCapacity(receiptQueueCapacity);
+        executor.setThreadNamePrefix("receipt-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    // one long-running writer per thread for the duration of an import, nothing ever waits in the queue
+    @Bean
+    public ThreadPoolTaskExecutor importExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(importThreads);
+        executor.setMaxPoolSize(importThreads);
+        executor.setQueueCapacity(importThreads);
+        executor.setThreadNamePrefix("import-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    @Bean
+    public ReceiptMetrics receiptMetrics(ReceiptService receiptService) {
+        return new ReceiptMetrics(receiptExecutor(), receiptService);
+    }
+
+    @Bean
+    public CatalogImportMetrics catalogImportMetrics(CatalogImportService catalogImportService) {
+        return new CatalogImportMetrics(catalogImportService);
+    }
+}
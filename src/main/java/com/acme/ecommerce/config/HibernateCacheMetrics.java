@@ -0,0 +1,45 @@
+package com.acme.ecommerce.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Hibernate second-level and query cache counters, per region, in /metrics
+public class HibernateCacheMetrics implements PublicMetrics {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public HibernateCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return metrics;
+        }
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+            String prefix = "hibernate.cache." + region.substring(region.lastIndexOf('.') + 1) + ".";
+            metrics.add(new Metric<Long>(prefix + "hit.count", regionStatistics.getHitCount()));
+            metrics.add(new Metric<Long>(prefix + "miss.count", regionStatistics.getMissCount()));
+            metrics.add(new Metric<Long>(prefix + "put.count", regionStatistics.getPutCount()));
+            metrics.add(new Metric<Long>(prefix + "size", regionStatistics.getElementCountInMemory()));
+        }
+        metrics.add(new Metric<Long>("hibernate.query.cache.hit.count", statistics.getQueryCacheHitCount()));
+        metrics.add(new Metric<Long>("hibernate.query.cache.miss.count", statistics.getQueryCacheMissCount()));
+        metrics.add(new Metric<Long>("hibernate.query.cache.put.count", statistics.getQueryCachePutCount()));
+        metrics.add(new Metric<Long>("hibernate.query.execution.count", statistics.getQueryExecutionCount()));
+        return metrics;
+    }
+}
@@ -0,0 +1,41 @@
+package com.acme.ecommerce.config;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.Configuration;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.ehcache.EhCacheRegionFactory;
+import org.hibernate.cache.ehcache.internal.util.HibernateEhcacheUtils;
+import org.hibernate.cfg.Settings;
+
+import java.util.Properties;
+
+// One Ehcache CacheManager per session factory. The singleton factory shared one per JVM, so every test
+// context saw the entries another had cached; the plain one refuses a second manager with the same name
+// while the first is still open. Each factory here gets the configured name plus its own identity.
+public class IsolatedEhCacheRegionFactory extends EhCacheRegionFactory {
+
+    private static final long serialVersionUID = 2507581653573319623L;
+
+    public static final String NAME = "com.acme.ecommerce.config.IsolatedEhCacheRegionFactory";
+
+    @Override
+    public void start(Settings settings, Properties properties) throws CacheException {
+        this.settings = settings;
+        if (manager != null) {
+            throw new CacheException("Region factory already started");
+        }
+        try {
+            Configuration configuration = HibernateEhcacheUtils.loadAndCorrectConfiguration(
+                    loadResource(properties.getProperty(NET_SF_EHCACHE_CONFIGURATION_RESOURCE_NAME)));
+            configuration.setName(configuration.getName() + "@" + Integer.toHexString(System.identityHashCode(this)));
+            manager = new CacheManager(configuration);
+            mbeanRegistrationHelper.registerMBean(manager, properties);
+        } catch (net.sf.ehcache.CacheException ex) {
+            throw new CacheException(ex);
+        }
+    }
+
+    CacheManager getCacheManager() {
+        return manager;
+    }
+}
@@ -0,0 +1,44 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.service.CatalogExportService;
+import com.acme.ecommerce.service.CatalogImportService;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+// the registry is the one the actuator creates for Dropwizard metrics, so every timer and meter
+// shows up in /metrics with its percentiles as well as in the /prometheus scrape
+@Configuration
+public class MetricsConfig extends WebMvcConfigurerAdapter {
+
+    @Autowired
+    private MetricRegistry registry;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new RequestMetricsInterceptor(registry));
+    }
+
+    @Bean
+    public PrometheusEndpoint prometheusEndpoint() {
+        return new PrometheusEndpoint(registry);
+    }
+
+    // off unless a deployment asks for it, the endpoint can overwrite every product
+    @Bean
+    @ConditionalOnProperty(name = "catalog.import.enabled", havingValue = "true")
+    public CatalogImportEndpoint catalogImportEndpoint(CatalogImportService catalogImportService) {
+        return new CatalogImportEndpoint(catalogImportService);
+    }
+
+    // off unless feed partners are given management access, every download holds a connection throughout
+    @Bean
+    @ConditionalOnProperty(name = "catalog.export.enabled", havingValue = "true")
+    public CatalogExportEndpoint catalogExportEndpoint(CatalogExportService catalogExportService) {
+        return new CatalogExportEndpoint(catalogExportService);
+    }
+}
@@ -1,10 +1,16 @@
 package com.acme.ecommerce.config;
 
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DataSourceInitializer;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
@@ -18,9 +24,39 @@ import java.util.Properties;
 @EnableJpaRepositories("com.acme.ecommerce.repository")
 public class PersistenceConfig {
 
+    @Autowired
+    private Environment environment;
+
+    // Tomcat JDBC pool; Boot publishes its active/usage figures under datasource.* in /metrics.
+    // The default is the in-memory database, the h2file and h2server profiles point it elsewhere.
     @Bean
     public DataSource dataSource() {
-        return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+        PoolProperties pool = new PoolProperties();
+        pool.setDriverClassName(environment.getProperty("persistence.driverClassName", "org.h2.Driver"));
+        pool.setUrl(environment.getProperty("persistence.url", "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1"));
+        pool.setUsername(environment.getProperty("persistence.username", "sa"));
+        pool.setPassword(environment.getProperty("persistence.password", ""));
+
+        pool.setInitialSize(environment.getProperty("persistence.pool.initialSize", Integer.class, 2));
+        pool.setMinIdle(environment.getProperty("persistence.pool.minIdle", Integer.class, 2));
+        pool.setMaxActive(environment.getProperty("persistence.pool.maxActive", Integer.class, 20));
+        pool.setMaxIdle(pool.getMaxActive());
+        // how long a request waits for a connection before failing, rather than queueing forever
+        pool.setMaxWait(environment.getProperty("persistence.pool.maxWait", Integer.class, 5000));
+
+        pool.setTestOnBorrow(true);
+        pool.setValidationQuery("select 1");
+        pool.setValidationInterval(30000);
+        pool.setTimeBetweenEvictionRunsMillis(5000);
+        pool.setMinEvictableIdleTimeMillis(60000);
+
+        // leak detection: connections held longer than this are logged with the stack that borrowed them
+        pool.setSuspectTimeout(environment.getProperty("persistence.pool.leakThreshold", Integer.class, 60));
+        pool.setLogAbandoned(true);
+        pool.setJdbcInterceptors("ConnectionState;StatementFinalizer;SlowQueryReport(threshold="
+                + environment.getProperty("persistence.pool.slowQueryThreshold", "1000") + ")");
+        pool.setJmxEnabled(true);
+        return new org.apache.tomcat.jdbc.pool.DataSource(pool);
     }
 
     @Bean
@@ -35,13 +71,49 @@ public class PersistenceConfig {
 
     private Properties jpaProperties() {
         Properties properties = new Properties();
-        properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        // create-drop suits the in-memory database only, a kept database is updated in place
+        properties.setProperty("hibernate.hbm2ddl.auto", ddlAuto());
         properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
         properties.setProperty("hibernate.show_sql", "false");
         properties.setProperty("hibernate.format_sql", "false");
+        // pooled sequence ids (see PooledSequenceGenerator) make inserts batchable, identity columns didn't
+        properties.setProperty("hibernate.jdbc.batch_size", environment.getProperty("persistence.batchSize", "50"));
+        properties.setProperty("hibernate.order_inserts", "true");
+        properties.setProperty("hibernate.order_updates", "true");
+        // Product rows and the catalog page query are served from Ehcache (ehcache-hibernate.xml),
+        // with a CacheManager of their own per entity manager factory.
+        String cache = environment.getProperty("persistence.secondLevelCache", "true");
+        properties.setProperty("hibernate.cache.use_second_level_cache", cache);
+        properties.setProperty("hibernate.cache.use_query_cache", cache);
+        properties.setProperty("hibernate.cache.region.factory_class",
+                IsolatedEhCacheRegionFactory.NAME);
+        properties.setProperty("net.sf.ehcache.configurationResourceName", "/ehcache-hibernate.xml");
+        properties.setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        // hit/miss counts for HibernateCacheMetrics; cheap, but switchable
+        properties.setProperty("hibernate.generate_statistics",
+                environment.getProperty("persistence.statistics", "true"));
         return properties;
     }
 
+    // hbm2ddl only runs import.sql when it creates the schema, a kept database is seeded while it has no coupons.
+    // Products come from the catalog feed, see CatalogImportServiceImpl.
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public DataSourceInitializer catalogSeeder() {
+        String ddlAuto = ddlAuto();
+        boolean schemaCreated = ddlAuto.equals("create") || ddlAuto.equals("create-drop");
+        DataSourceInitializer initializer = new DataSourceInitializer();
+        initializer.setDataSource(dataSource());
+        initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("import.sql")));
+        initializer.setEnabled(!schemaCreated
+                && new JdbcTemplate(dataSource()).queryForObject("select count(*) from coupon", Long.class) == 0);
+        return initializer;
+    }
+
+    private String ddlAuto() {
+        return environment.getProperty("persistence.ddlAuto", "create-drop");
+    }
+
     @Bean
     public JpaTransactionManager transactionManager() {
         JpaTransactionManager transactionManager = new JpaTransactionManager();
@@ -0,0 +1,151 @@
+package com.acme.ecommerce.config;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoint;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// the metric registry in the Prometheus text format. Timers and histograms are summaries with the
+// reservoir's quantiles, the request timers share one family labelled by method and uri.
+public class PrometheusEndpoint implements MvcEndpoint {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+    private static final double SECONDS_PER_NANO = 1d / TimeUnit.SECONDS.toNanos(1);
+    private static final String REQUEST_FAMILY = "request_seconds";
+
+    private final MetricRegistry registry;
+
+    public PrometheusEndpoint(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, produces = CONTENT_TYPE)
+    @ResponseBody
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        boolean requestFamily = false;
+        for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(RequestMetricsInterceptor.PREFIX)) {
+                if (!requestFamily) {
+                    type(out, REQUEST_FAMILY, "summary");
+                    requestFamily = true;
+                }
+                // request.<method>.<pattern>, methods never contain a dot
+                String mapping = name.substring(RequestMetricsInterceptor.PREFIX.length());
+                int dot = mapping.indexOf('.');
+                String labels = "method=\"" + mapping.substring(0, dot) + "\",uri=\"" + escape(mapping.substring(dot + 1)) + "\"";
+                summary(out, REQUEST_FAMILY, labels, entry.getValue().getSnapshot(), SECONDS_PER_NANO, entry.getValue().getCount());
+            }
+        }
+        for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            if (!entry.getKey().startsWith(RequestMetricsInterceptor.PREFIX)) {
+                String name = sanitize(entry.getKey()) + "_seconds";
+                type(out, name, "summary");
+                summary(out, name, null, entry.getValue().getSnapshot(), SECONDS_PER_NANO, entry.getValue().getCount());
+            }
+        }
+        for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+            String name = sanitize(entry.getKey());
+            type(out, name, "summary");
+            summary(out, name, null, entry.getValue().getSnapshot(), 1d, entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Meter> entry : registry.getMeters().entrySet()) {
+            String name = sanitize(entry.getKey()) + "_total";
+            type(out, name, "counter");
+            sample(out, name, null, entry.getValue().getCount());
+        }
+        // Dropwizard counters can go down as well as up
+        for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            String name = sanitize(entry.getKey());
+            type(out, name, "gauge");
+            sample(out, name, null, entry.getValue().getCount());
+        }
+        // the registry hands its gauges out as a raw type
+        for (Map.Entry<String, ?> entry : registry.getGauges().entrySet()) {
+            Object value = ((Gauge<?>) entry.getValue()).getValue();
+            if (value instanceof Number) {
+                String name = sanitize(entry.getKey());
+                type(out, name, "gauge");
+                sample(out, name, null, ((Number) value).doubleValue());
+            }
+        }
+        return out.toString();
+    }
+
+    // the reservoir keeps no running sum, so only the count goes along with the quantiles
+    private static void summary(StringBuilder out, String name, String labels, Snapshot snapshot, double scale,
+                                long count) {
+        for (double quantile : QUANTILES) {
+            String quantileLabel = "quantile=\"" + quantile + "\"";
+            sample(out, name, labels == null ? quantileLabel : labels + "," + quantileLabel,
+                    snapshot.getValue(quantile) * scale);
+        }
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static void type(StringBuilder out, String name, String type) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    // metric names may only hold [a-zA-Z0-9_:] and must not start with a digit
+    static String sanitize(String name) {
+        String sanitized = name.replaceAll("[^a-zA-Z0-9_]", "_");
+        return Character.isDigit(sanitized.charAt(0)) ? "_" + sanitized : sanitized;
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public String getPath() {
+        return "/prometheus";
+    }
+
+    @Override
+    public boolean isSensitive() {
+        return true;
+    }
+
+    @Override
+    public Class<? extends Endpoint<?>> getEndpointType() {
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.service.ReceiptService;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// receipt pool backlog and render times, for spotting when the pool needs more threads
+public class ReceiptMetrics implements PublicMetrics {
+
+    private final ThreadPoolTaskExecutor executor;
+    private final ReceiptService receiptService;
+
+    public ReceiptMetrics(ThreadPoolTaskExecutor executor, ReceiptService receiptService) {
+        this.executor = executor;
+        this.receiptService = receiptService;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>("receipt.queue.depth", executor.getThreadPoolExecutor().getQueue().size()));
+        metrics.add(new Metric<Integer>("receipt.active", executor.getActiveCount()));
+        long count = receiptService.getRenderCount();
+        metrics.add(new Metric<Long>("receipt.render.count", count));
+        metrics.add(new Metric<Double>("receipt.render.time.mean",
+                count == 0 ? 0d : (double) receiptService.getRenderTimeNanos() / count / TimeUnit.MILLISECONDS.toNanos(1)));
+        metrics.add(new Metric<Double>("receipt.render.time.max",
+                (double) receiptService.getMaxRenderTimeNanos() / TimeUnit.MILLISECONDS.toNanos(1)));
+        return metrics;
+    }
+}
@@ -0,0 +1,45 @@
+package com.acme.ecommerce.config;
+
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+// one timer per request mapping, named request.<method>.<pattern> so /product/detail/{id} is a single timer.
+// The start survives the async redispatch, receipts and thumbnails are timed until the response is written.
+public class RequestMetricsInterceptor extends HandlerInterceptorAdapter {
+
+    public static final String PREFIX = "request.";
+
+    private static final String START = RequestMetricsInterceptor.class.getName() + ".START";
+
+    private final MetricRegistry registry;
+
+    public RequestMetricsInterceptor(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(START) == null) {
+            request.setAttribute(START, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Long start = (Long) request.getAttribute(START);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (start == null || pattern == null || !(handler instanceof HandlerMethod)) {
+            return;
+        }
+        registry.timer(PREFIX + request.getMethod() + "." + pattern)
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
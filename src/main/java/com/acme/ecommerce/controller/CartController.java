@@ -6,8 +6,11 @@ import com.acme.ecommerce.domain.Product;
 import com.acme.ecommerce.domain.ProductPurchase;
 import com.acme.ecommerce.domain.Purchase;
 import com.acme.ecommerce.domain.ShoppingCart;
+import com.acme.ecommerce.service.CartExpiryService;
+import com.acme.ecommerce.service.CartStoreService;
+import com.acme.ecommerce.service.InventoryService;
+import com.acme.ecommerce.service.MetricsService;
 import com.acme.ecommerce.service.ProductService;
-import com.acme.ecommerce.service.PurchaseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,11 +40,20 @@ public class CartController {
     final Logger logger = LoggerFactory.getLogger(CartController.class);
 
     @Autowired
-    PurchaseService purchaseService;
+    CartStoreService cartStoreService;
 
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private CartExpiryService cartExpiryService;
+
+    @Autowired
+    private MetricsService metricsService;
+
     @Autowired
     private ShoppingCart sCart;
 
@@ -51,23 +63,21 @@ public class CartController {
     @RequestMapping("")
     public String viewCart(Model model) {
         logger.debug("Getting Product List");
-        logger.debug("Session ID = " + session.getId());
+        logger.debug("Session ID = {}", session.getId());
 
         // model.addAttribute("page_title", "View Cart");
         Purchase purchase = sCart.getPurchase();
-        BigDecimal subTotal = new BigDecimal(0);
 
         model.addAttribute("purchase", purchase);
         if (purchase != null) {
-            for (ProductPurchase pp : purchase.getProductPurchases()) {
-                logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName());
-                subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
-            }
-            if (!subTotal.equals(new BigDecimal(0))) {
+            cartExpiryService.touch(purchase);
+            // kept up to date by every cart mutation, nothing to add up here
+            BigDecimal subTotal = purchase.getSubTotal();
+            if (subTotal.signum() != 0) {
                 model.addAttribute("subTotal", subTotal);
             }
         } else {
-            logger.error("No purchases Found for session ID=" + session.getId());
+            logger.error("No purchases Found for session ID={}", session.getId());
             return "redirect:/error";
         }
         CartController.addCart(model, sCart);
@@ -80,48 +90,38 @@ public class CartController {
             @ModelAttribute(value = "productId") long productId,
             @ModelAttribute(value = "quantity") int quantity,
             RedirectAttributes attributes) {
-        boolean productAlreadyInCart = false;
         RedirectView redirect = new RedirectView("/product/");
         redirect.setExposeModelAttributes(false);
 
+        if (orderPlaced(redirect, attributes)) {
+            return redirect;
+        }
         Product addProduct = productService.findById(productId);
 
         // TODO Check for product availability before adding (done)
-        productService.checkProductStock(addProduct, quantity);
+        // the cart's line quantities are held as reservations until the order is placed
+        inventoryService.reserve(addProduct, quantity);
 
         if (addProduct != null) {
-            logger.debug("Adding Product: " + addProduct.getId());
+            logger.debug("Adding Product: {}", addProduct.getId());
 
             Purchase purchase = sCart.getPurchase();
             if (purchase == null) {
                 purchase = new Purchase();
                 sCart.setPurchase(purchase);
-            } else {
-                for (ProductPurchase pp : purchase.getProductPurchases()) {
-                    if (pp.getProduct() != null) {
-                        if (pp.getProduct().getId().equals(productId)) {
-                            pp.setQuantity(pp.getQuantity() + quantity);
-                            productAlreadyInCart = true;
-                            break;
-                        }
-                    }
-                }
-            }
-            if (!productAlreadyInCart) {
-                ProductPurchase newProductPurchase = new ProductPurchase();
-                newProductPurchase.setProduct(addProduct);
-                newProductPurchase.setQuantity(quantity);
-                newProductPurchase.setPurchase(purchase);
-                purchase.getProductPurchases().add(newProductPurchase);
             }
+            // merges into the product's line if there is one, the purchase locks against the write-behind flush
+            purchase.addProductPurchase(addProduct, quantity);
             String message = "Added " + quantity + " of " + addProduct.getName() + " to cart";
             logger.debug(message);
             // TODO: Enhancement 6
             // Added flash message for adding products to the cart
             attributes.addFlashAttribute("flash", new FlashMessage(message, SUCCESS));
-            sCart.setPurchase(purchaseService.save(purchase));
+            cartStoreService.markDirty(purchase);
+            cartExpiryService.touch(purchase);
+            metricsService.mark(MetricsService.CART_ADD);
         } else {
-            logger.error("Attempt to add unknown product: " + productId);
+            logger.error("Attempt to add unknown product: {}", productId);
             redirect.setUrl("/error");
         }
 
@@ -132,46 +132,54 @@ public class CartController {
     public RedirectView updateCart(@ModelAttribute(value = "productId") long productId,
                                    @ModelAttribute(value = "newQuantity") int newQuantity,
                                    RedirectAttributes attributes) {
-        logger.debug("Updating Product: " + productId + " with Quantity: " + newQuantity);
+        logger.debug("Updating Product: {} with Quantity: {}", productId, newQuantity);
         RedirectView redirect = new RedirectView("/cart");
         redirect.setExposeModelAttributes(false);
+        if (orderPlaced(redirect, attributes)) {
+            return redirect;
+        }
 
         Product updateProduct = productService.findById(productId);
 
-        // TODO - check stock quantity
-        // Check for product availability before updating
-        productService.checkProductStock(updateProduct, newQuantity);
-
         if (updateProduct != null) {
             Purchase purchase = sCart.getPurchase();
             if (purchase == null) {
                 logger.error("Unable to find shopping cart for update");
                 redirect.setUrl("/error");
             } else {
-                for (ProductPurchase pp : purchase.getProductPurchases()) {
-                    if (pp.getProduct() != null) {
-                        if (pp.getProduct().getId().equals(productId)) {
-                            if (newQuantity > 0) {
-                                pp.setQuantity(newQuantity);
-                                String message = "Updated " + updateProduct.getName() + " to " + newQuantity;
-                                logger.debug(message);
-                                // TODO: Enhancement 6
-                                // Added flash message for updating the cart - success
-                                attributes.addFlashAttribute("flash", new FlashMessage(message, SUCCESS));
+                // the write-behind flush reads the cart from another thread
+                synchronized (purchase) {
+                    ProductPurchase pp = purchase.findProductPurchase(productId);
+                    if (pp != null) {
+                        if (newQuantity > 0) {
+                            // TODO - check stock quantity
+                            // Check for product availability before updating, only the difference is reserved
+                            if (newQuantity > pp.getQuantity()) {
+                                inventoryService.reserve(updateProduct, newQuantity - pp.getQuantity());
                             } else {
-                                purchase.getProductPurchases().remove(pp);
-                                String message = "Removed " + updateProduct.getName() + " because quantity was set to " + newQuantity;
-                                logger.debug(message);
-                                // TODO: Enhancement 6
-                                // Added flash message for updating the cart - failure
-                                attributes.addFlashAttribute("flash", new FlashMessage(message, FAILURE));
+                                inventoryService.release(updateProduct, pp.getQuantity() - newQuantity);
                             }
-                            break;
+                            purchase.updateProductPurchase(productId, newQuantity);
+                            String message = "Updated " + updateProduct.getName() + " to " + newQuantity;
+                            logger.debug(message);
+                            // TODO: Enhancement 6
+                            // Added flash message for updating the cart - success
+                            attributes.addFlashAttribute("flash", new FlashMessage(message, SUCCESS));
+                        } else {
+                            inventoryService.release(updateProduct, pp.getQuantity());
+                            purchase.removeProductPurchase(productId);
+                            String message = "Removed " + updateProduct.getName() + " because quantity was set to " + newQuantity;
+                            logger.debug(message);
+                            // TODO: Enhancement 6
+                            // Added flash message for updating the cart - failure
+                            attributes.addFlashAttribute("flash", new FlashMessage(message, FAILURE));
                         }
                     }
                 }
+                cartStoreService.markDirty(purchase);
+                cartExpiryService.touch(purchase);
+                metricsService.mark(MetricsService.CART_UPDATE);
             }
-            sCart.setPurchase(purchaseService.save(purchase));
         } else {
             logger.error("Attempt to update on non-existent product");
             redirect.setUrl("/error");
@@ -183,29 +191,29 @@ public class CartController {
     @RequestMapping(path = "/remove", method = RequestMethod.POST)
     public RedirectView removeFromCart(@ModelAttribute(value = "productId") long productId,
                                        RedirectAttributes attributes) {
-        logger.debug("Removing Product: " + productId);
+        logger.debug("Removing Product: {}", productId);
         RedirectView redirect = new RedirectView("/cart");
         redirect.setExposeModelAttributes(false);
+        if (orderPlaced(redirect, attributes)) {
+            return redirect;
+        }
 
         Product updateProduct = productService.findById(productId);
         if (updateProduct != null) {
             Purchase purchase = sCart.getPurchase();
             if (purchase != null) {
-                for (ProductPurchase pp : purchase.getProductPurchases()) {
-                    if (pp.getProduct() != null) {
-                        if (pp.getProduct().getId().equals(productId)) {
-                            purchase.getProductPurchases().remove(pp);
-                            String message = "Removed " + updateProduct.getName() + " from cart";
-                            logger.debug(message);
-                            // TODO: Enhancement 6
-                            // Added flash message for removing products from the cart
-                            attributes.addFlashAttribute("flash", new FlashMessage(message, SUCCESS));
-                            break;
-                        }
-                    }
+                ProductPurchase pp = purchase.removeProductPurchase(productId);
+                if (pp != null) {
+                    inventoryService.release(updateProduct, pp.getQuantity());
+                    String message = "Removed " + updateProduct.getName() + " from cart";
+                    logger.debug(message);
+                    // TODO: Enhancement 6
+                    // Added flash message for removing products from the cart
+                    attributes.addFlashAttribute("flash", new FlashMessage(message, SUCCESS));
                 }
-                purchase = purchaseService.save(purchase);
-                sCart.setPurchase(purchase);
+                cartStoreService.markDirty(purchase);
+                cartExpiryService.touch(purchase);
+                metricsService.mark(MetricsService.CART_REMOVE);
                 if (purchase.getProductPurchases().isEmpty()) {
                     redirect.setUrl("/product/");
                 }
@@ -225,12 +233,20 @@ public class CartController {
     public RedirectView emptyCart(RedirectAttributes redirectAttributes) {
         RedirectView redirect = new RedirectView("/product/");
         redirect.setExposeModelAttributes(false);
+        if (orderPlaced(redirect, redirectAttributes)) {
+            return redirect;
+        }
 
         logger.debug("Emptying Cart");
         Purchase purchase = sCart.getPurchase();
         if (purchase != null) {
-            purchase.getProductPurchases().clear();
-            sCart.setPurchase(purchaseService.save(purchase));
+            synchronized (purchase) {
+                inventoryService.release(purchase);
+                purchase.clearProductPurchases();
+            }
+            cartStoreService.markDirty(purchase);
+            cartExpiryService.touch(purchase);
+            metricsService.mark(MetricsService.CART_EMPTY);
             redirectAttributes.addFlashAttribute("flash", new FlashMessage("Cart is emptied.", FlashMessage.Status.SUCCESS));
         } else {
             logger.error("Unable to find shopping cart for update");
@@ -245,18 +261,27 @@ public class CartController {
     public String exceedsStock(HttpServletRequest request, Exception ex) {
         String message = ex.getMessage();
         logger.error(message);
+        metricsService.mark(MetricsService.STOCK_REJECTED);
         FlashMap flashMap = RequestContextUtils.getOutputFlashMap(request);
         flashMap.put("flash", new FlashMessage(message, FAILURE));
         return "redirect:" + request.getHeader("referer");
     }
 
+    // the order's stock is committed once billing is posted, until the receipt step its lines can no longer change
+    private boolean orderPlaced(RedirectView redirect, RedirectAttributes attributes) {
+        Purchase purchase = sCart.getPurchase();
+        if (purchase == null || purchase.getOrderNumber() == null) {
+            return false;
+        }
+        attributes.addFlashAttribute("flash", new FlashMessage("Your order has already been placed.", FAILURE));
+        redirect.setUrl("/checkout/confirmation");
+        return true;
+    }
+
     public static void addCart(Model model, ShoppingCart sCart) {
-        BigDecimal subTotal = new BigDecimal(0);
         model.addAttribute("cart", sCart);
-        for (ProductPurchase pp : sCart.getPurchase().getProductPurchases()) {
-            subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
-        }
-        if (!subTotal.equals(new BigDecimal(0))) {
+        BigDecimal subTotal = sCart.getPurchase().getSubTotal();
+        if (subTotal.signum() != 0) {
             model.addAttribute("subTotal", subTotal);
         }
     }
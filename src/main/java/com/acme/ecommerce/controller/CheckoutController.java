@@ -2,34 +2,45 @@ package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.FlashMessage;
 import com.acme.ecommerce.domain.*;
-import com.acme.ecommerce.service.PurchaseService;
+import com.acme.ecommerce.service.CartExpiryService;
+import com.acme.ecommerce.service.CartStoreService;
+import com.acme.ecommerce.service.CouponService;
+import com.acme.ecommerce.service.InventoryService;
+import com.acme.ecommerce.service.MetricsService;
+import com.acme.ecommerce.service.OrderNumberService;
+import com.acme.ecommerce.service.ReceiptService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
-import org.springframework.util.FileCopyUtils;
+import org.springframework.util.concurrent.ListenableFutureCallback;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
-import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigDecimal;
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.acme.ecommerce.FlashMessage.Status.FAILURE;
 import static com.acme.ecommerce.FlashMessage.Status.SUCCESS;
 import static com.acme.ecommerce.controller.WebConstants.*;
+import static com.acme.ecommerce.domain.PriceCalculator.lineTotal;
+import static com.acme.ecommerce.domain.PriceCalculator.toDecimal;
 
 @Controller
 @RequestMapping("/checkout")
@@ -37,23 +48,41 @@ import static com.acme.ecommerce.controller.WebConstants.*;
 public class CheckoutController {
     final Logger logger = LoggerFactory.getLogger(CheckoutController.class);
 
-    @Autowired
-    private TemplateEngine templateEngine;
+    private static final MediaType RECEIPT_CONTENT_TYPE = MediaType.parseMediaType("text/html;charset=UTF-8");
 
     @Autowired
     private ShoppingCart sCart;
 
     @Autowired
-    PurchaseService purchaseService;
+    CartStoreService cartStoreService;
+
+    @Autowired
+    InventoryService inventoryService;
+
+    @Autowired
+    CartExpiryService cartExpiryService;
+
+    @Autowired
+    CouponService couponService;
+
+    @Autowired
+    OrderNumberService orderNumberService;
+
+    @Autowired
+    ReceiptService receiptService;
+
+    @Autowired
+    MetricsService metricsService;
 
     @RequestMapping("/coupon")
     String checkoutCoupon(Model model) {
         Purchase purchase = sCart.getPurchase();
-        BigDecimal subTotal = new BigDecimal(0);
+        long subTotal = 0;
         CouponCode couponCode = sCart.getCouponCode();
 
         model.addAttribute("purchase", purchase);
         if (purchase != null) {
+            cartExpiryService.touch(purchase);
 
             if (couponCode == null) {
                 couponCode = new CouponCode();
@@ -61,7 +90,7 @@ public class CheckoutController {
 
             subTotal = computeSubtotal(purchase, couponCode);
 
-            model.addAttribute("subTotal", subTotal);
+            model.addAttribute("subTotal", toDecimal(subTotal));
             model.addAttribute("couponCode", couponCode);
         } else {
             logger.error("No purchases Found!");
@@ -75,8 +104,19 @@ public class CheckoutController {
     String postCouponCode(Model model,
                           @Valid @ModelAttribute(value = "couponCode") CouponCode couponCode,
                           BindingResult result, RedirectAttributes attributes) {
+        if (!result.hasErrors()) {
+            for (String code : couponCode.getCodes()) {
+                if (!couponService.isValid(code)) {
+                    attributes.addFlashAttribute(
+                            "flash", new FlashMessage("Unknown or expired coupon code: " + code + ".", FAILURE));
+                    attributes.addFlashAttribute("couponCode", couponCode);
+                    return "redirect:coupon";
+                }
+            }
+        }
         if (!result.hasErrors()) {
             sCart.setCouponCode(couponCode);
+            metricsService.mark(MetricsService.CHECKOUT_COUPON);
             attributes.addFlashAttribute(
                     "flash", new FlashMessage("The Coupon code is accepted.", SUCCESS));
             return "redirect:shipping";
@@ -91,11 +131,12 @@ public class CheckoutController {
     @RequestMapping(path = "/shipping", method = RequestMethod.GET)
     String checkoutShipping(Model model) {
         Purchase purchase = sCart.getPurchase();
-        BigDecimal subTotal = new BigDecimal(0);
+        long subTotal = 0;
         CouponCode couponCode = sCart.getCouponCode();
 
         model.addAttribute("purchase", purchase);
         if (purchase != null) {
+            cartExpiryService.touch(purchase);
             subTotal = computeSubtotal(purchase, couponCode);
 
             if (!model.containsAttribute("shippingAddress")) { // so we don't overwrite any errors...
@@ -107,7 +148,7 @@ public class CheckoutController {
                 }
                 model.addAttribute("shippingAddress", modelAddress);
             }
-            model.addAttribute("subTotal", subTotal);
+            model.addAttribute("subTotal", toDecimal(subTotal));
             model.addAttribute("LIST_COUNTRIES", LIST_COUNTRIES);
             model.addAttribute("LIST_STATES", LIST_STATES);
         } else {
@@ -121,15 +162,19 @@ public class CheckoutController {
     String postShipping(@ModelAttribute(value = "shippingAddress") @Valid Address shippingAddress, final BindingResult result, RedirectAttributes redirectAttributes) {
 
         if (result.hasErrors()) {
-            logger.error("Errors on fields: " + result.getFieldErrorCount());
+            logger.error("Errors on fields: {}", result.getFieldErrorCount());
             redirectAttributes.addFlashAttribute("org.springframework.validation.BindingResult.shippingAddress", result);
             redirectAttributes.addFlashAttribute("shippingAddress", shippingAddress);
             return String.format("redirect:shipping");
         } else {
             Purchase purchase = sCart.getPurchase();
             if (purchase != null) {
-                purchase.setShippingAddress(shippingAddress);
-                sCart.setPurchase(purchaseService.save(purchase));
+                synchronized (purchase) {
+                    purchase.setShippingAddress(shippingAddress);
+                }
+                cartStoreService.markDirty(purchase);
+                cartExpiryService.touch(purchase);
+                metricsService.mark(MetricsService.CHECKOUT_SHIPPING);
             } else {
                 logger.error("No purchases Found!");
                 return ("redirect:/error");
@@ -142,12 +187,13 @@ public class CheckoutController {
     @RequestMapping("/billing")
     String checkoutBilling(Model model) {
         Purchase purchase = sCart.getPurchase();
-        BigDecimal subTotal = new BigDecimal(0);
-        BigDecimal shippingCost = new BigDecimal(0);
+        long subTotal = 0;
+        long shippingCost = 0;
         CouponCode couponCode = sCart.getCouponCode();
 
         model.addAttribute("purchase", purchase);
         if (purchase != null) {
+            cartExpiryService.touch(purchase);
 
             if (!model.containsAttribute("billingObject")) { // so we don't overwrite any errors...
                 CombinedBilling combinedBilling = new CombinedBilling();
@@ -166,13 +212,13 @@ public class CheckoutController {
             subTotal = computeSubtotal(purchase, couponCode);
             shippingCost = computeShippingCost(purchase);
 
-            BigDecimal orderTotal = subTotal.add(shippingCost);
+            long orderTotal = subTotal + shippingCost;
 
             model.addAttribute("shippingAddress", purchase.getShippingAddress());
 
-            model.addAttribute("subTotal", subTotal);
-            model.addAttribute("shippingCost", shippingCost);
-            model.addAttribute("orderTotal", orderTotal);
+            model.addAttribute("subTotal", toDecimal(subTotal));
+            model.addAttribute("shippingCost", toDecimal(shippingCost));
+            model.addAttribute("orderTotal", toDecimal(orderTotal));
             model.addAttribute("LIST_COUNTRIES", LIST_COUNTRIES);
             model.addAttribute("LIST_STATES", LIST_STATES);
             model.addAttribute("LIST_MONTHS", LIST_MONTHS);
@@ -195,30 +241,56 @@ public class CheckoutController {
         } else {
             Purchase purchase = sCart.getPurchase();
             if (purchase != null) {
-                if (!combinedBilling.isBillingAddressSame()) {
-                    Address billingAddress = new Address();
-                    billingAddress.setFirstName(combinedBilling.getFirstName());
-                    billingAddress.setLastName(combinedBilling.getLastName());
-                    billingAddress.setStreetAddress(combinedBilling.getStreetAddress());
-                    billingAddress.setCity(combinedBilling.getCity());
-                    billingAddress.setState(combinedBilling.getState());
-                    billingAddress.setZipCode(combinedBilling.getZipCode());
-                    billingAddress.setPhoneNumber(combinedBilling.getPhoneNumber());
-                    billingAddress.setEmail(combinedBilling.getEmail());
-                    billingAddress.setCountry(combinedBilling.getCountry());
-                    purchase.setBillingAddress(billingAddress);
-                } else {
-                    if (purchase.getBillingAddress() != null) {
-                        purchase.setBillingAddress(null);
+                synchronized (purchase) {
+                    if (!combinedBilling.isBillingAddressSame()) {
+                        Address billingAddress = new Address();
+                        billingAddress.setFirstName(combinedBilling.getFirstName());
+                        billingAddress.setLastName(combinedBilling.getLastName());
+                        billingAddress.setStreetAddress(combinedBilling.getStreetAddress());
+                        billingAddress.setCity(combinedBilling.getCity());
+                        billingAddress.setState(combinedBilling.getState());
+                        billingAddress.setZipCode(combinedBilling.getZipCode());
+                        billingAddress.setPhoneNumber(combinedBilling.getPhoneNumber());
+                        billingAddress.setEmail(combinedBilling.getEmail());
+                        billingAddress.setCountry(combinedBilling.getCountry());
+                        purchase.setBillingAddress(billingAddress);
+                    } else {
+                        if (purchase.getBillingAddress() != null) {
+                            purchase.setBillingAddress(null);
+                        }
+                    }
+                    purchase.setCreditCardNumber(combinedBilling.getCreditCardNumber());
+                    purchase.setCreditCardName(combinedBilling.getCreditCardName());
+                    purchase.setCreditCardExpMonth(combinedBilling.getCreditCardExpMonth());
+                    purchase.setCreditCardExpYear(combinedBilling.getCreditCardExpYear());
+                    purchase.setCreditCardCVC(combinedBilling.getCreditCardCVC());
+                    // reserved stock is only turned into sales once per order, and the order keeps its number
+                    // when billing is posted again
+                    if (purchase.getOrderNumber() == null) {
+                        try {
+                            inventoryService.commit(purchase);
+                        } catch (IllegalStateException ex) {
+                            // stock was counted again under the reservation, by an import or an edit
+                            logger.error(ex.getMessage());
+                            releaseLines(purchase);
+                            purchase.clearProductPurchases();
+                            cartStoreService.markDirty(purchase);
+                            cartExpiryService.touch(purchase);
+                            metricsService.mark(MetricsService.STOCK_REJECTED);
+                            redirectAttributes.addFlashAttribute("flash", new FlashMessage(
+                                    "Some items in your cart are no longer in stock, please add them again.", FAILURE));
+                            return "redirect:/cart";
+                        }
+                        long orderId = orderNumberService.nextId();
+                        purchase.setOrderId(orderId);
+                        purchase.setOrderNumber(Long.toString(orderId));
                     }
                 }
-                purchase.setCreditCardNumber(combinedBilling.getCreditCardNumber());
-                purchase.setCreditCardName(combinedBilling.getCreditCardName());
-                purchase.setCreditCardExpMonth(combinedBilling.getCreditCardExpMonth());
-                purchase.setCreditCardExpYear(combinedBilling.getCreditCardExpYear());
-                purchase.setCreditCardCVC(combinedBilling.getCreditCardCVC());
-                purchase.setOrderNumber(String.valueOf(ThreadLocalRandom.current().nextInt(1000000, 9999999)));
-                sCart.setPurchase(purchaseService.save(purchase));
+                // placed orders are no longer carts, they must never expire
+                cartExpiryService.untrack(purchase);
+                // the order is written before confirming it, whatever the write-behind interval
+                cartStoreService.flush(purchase);
+                metricsService.mark(MetricsService.CHECKOUT_BILLING);
             } else {
                 logger.error("No purchases Found!");
                 return ("redirect:/error");
@@ -228,22 +300,35 @@ public class CheckoutController {
         return "redirect:confirmation";
     }
 
+    // a line whose reservation is already gone has nothing to give back
+    private void releaseLines(Purchase purchase) {
+        for (ProductPurchase pp : purchase.getProductPurchases()) {
+            if (pp.getProduct() != null) {
+                try {
+                    inventoryService.release(pp.getProduct(), pp.getQuantity());
+                } catch (IllegalStateException ex) {
+                    logger.debug(ex.getMessage());
+                }
+            }
+        }
+    }
+
     @RequestMapping("/confirmation")
     String checkoutConfirmation(Model model) {
         Purchase purchase = sCart.getPurchase();
-        BigDecimal subTotal = new BigDecimal(0);
-        BigDecimal shippingCost = new BigDecimal(0);
+        long subTotal = 0;
+        long shippingCost = 0;
         CouponCode couponCode = sCart.getCouponCode();
 
         model.addAttribute("purchase", purchase);
         if (purchase != null) {
             subTotal = computeSubtotal(purchase, couponCode);
             shippingCost = computeShippingCost(purchase);
-            BigDecimal orderTotal = subTotal.add(shippingCost);
+            long orderTotal = subTotal + shippingCost;
 
-            model.addAttribute("subTotal", subTotal);
-            model.addAttribute("shippingCost", shippingCost);
-            model.addAttribute("orderTotal", orderTotal);
+            model.addAttribute("subTotal", toDecimal(subTotal));
+            model.addAttribute("shippingCost", toDecimal(shippingCost));
+            model.addAttribute("orderTotal", toDecimal(orderTotal));
 
             model.addAttribute("orderNumber", purchase.getOrderNumber());
             model.addAttribute("shippingAddress", purchase.getShippingAddress());
@@ -260,83 +345,104 @@ public class CheckoutController {
     }
 
     @RequestMapping(value = "/email", method = RequestMethod.GET)
-    public void getFile(HttpServletResponse response) {
+    public DeferredResult<ResponseEntity<Resource>> getFile() {
         // simulating an email receipt
-        try {
-            // Prepare the Thymeleaf evaluation context
-            final Context ctx = new Context();
+        final DeferredResult<ResponseEntity<Resource>> result = new DeferredResult<ResponseEntity<Resource>>();
 
-            Purchase purchase = sCart.getPurchase();
-            BigDecimal subTotal = new BigDecimal(0);
-            BigDecimal shippingCost = new BigDecimal(0);
-            CouponCode couponCode = sCart.getCouponCode();
-
-            ctx.setVariable("purchase", purchase);
-            if (purchase != null) {
-                subTotal = computeSubtotal(purchase, couponCode);
-                shippingCost = computeShippingCost(purchase);
-                BigDecimal orderTotal = subTotal.add(shippingCost);
-
-                ctx.setVariable("subTotal", subTotal);
-                ctx.setVariable("shippingCost", shippingCost);
-                ctx.setVariable("orderTotal", orderTotal);
-
-                ctx.setVariable("orderNumber", purchase.getOrderNumber());
-                ctx.setVariable("shippingAddress", purchase.getShippingAddress());
-
-                // TODO: Bugfix 4
-                // Remove the billing address and all payment info from the email template
-                 ctx.setVariable("billingAddress", purchase.getBillingAddress());
-                 ctx.setVariable("creditCard", maskCardNumber(purchase.getCreditCardNumber()));
+        Purchase purchase = sCart.getPurchase();
+        final String orderNumber;
+        Map<String, Object> variables = null;
 
-                final String htmlContent = this.templateEngine.process("email_confirmation", ctx);
+        if (purchase != null && purchase.getOrderNumber() != null) {
+            CouponCode couponCode = sCart.getCouponCode();
 
-                response.setHeader("Content-Disposition", "attachment; filename=email_receipt.html");
+            // the template variables are collected here, the cart is gone by the time the receipt pool renders them
+            variables = new HashMap<String, Object>();
+            variables.put("purchase", purchase);
+            long subTotal = computeSubtotal(purchase, couponCode);
+            long shippingCost = computeShippingCost(purchase);
+            long orderTotal = subTotal + shippingCost;
 
-                response.setContentType("text/html");
+            variables.put("subTotal", toDecimal(subTotal));
+            variables.put("shippingCost", toDecimal(shippingCost));
+            variables.put("orderTotal", toDecimal(orderTotal));
 
-                InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(htmlContent.getBytes()));
+            variables.put("orderNumber", purchase.getOrderNumber());
+            variables.put("shippingAddress", purchase.getShippingAddress());
 
-                FileCopyUtils.copy(inputStream, response.getOutputStream());
+            // TODO: Bugfix 4
+            // Remove the billing address and all payment info from the email template
+            variables.put("billingAddress", purchase.getBillingAddress());
+            variables.put("creditCard", maskCardNumber(purchase.getCreditCardNumber()));
 
-                response.flushBuffer();
-            } else {
-                logger.error("No purchases Found!");
-            }
+            orderNumber = purchase.getOrderNumber();
 
             //Order completed, reset in case user wants to order again
+            sCart.setLastOrderNumber(orderNumber);
             sCart.setCouponCode(null);
             sCart.setPurchase(null);
-        } catch (IOException ex) {
-            logger.info("Error writing file to output stream. Filename was '{}'", "email_receipt.html", ex);
-            throw new RuntimeException("IOError writing file to output stream");
+        } else if (sCart.getLastOrderNumber() != null) {
+            // a re-download, served from the spooled receipt
+            orderNumber = sCart.getLastOrderNumber();
+        } else {
+            logger.error("No purchases Found!");
+            result.setResult(ResponseEntity.ok().<Resource>body(null));
+            return result;
         }
-    }
 
-    private BigDecimal computeSubtotal(Purchase purchase, CouponCode couponCode) {
+        // headers travel with the entity, the async dispatch may write to a fresh response
+        receiptService.findReceipt(orderNumber, variables).addCallback(new ListenableFutureCallback<File>() {
+            @Override
+            public void onSuccess(File receipt) {
+                result.setResult(ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=email_receipt.html")
+                        .contentType(RECEIPT_CONTENT_TYPE)
+                        .contentLength(receipt.length())
+                        .<Resource>body(new FileSystemResource(receipt)));
+            }
 
-        BigDecimal subTotal = new BigDecimal(0);
+            @Override
+            public void onFailure(Throwable ex) {
+                if (ex instanceof TaskRejectedException) {
+                    logger.warn("Receipt queue full, rejecting receipt for order {}", orderNumber);
+                    result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, "1").<Resource>body(null));
+                } else if (ex instanceof FileNotFoundException) {
+                    logger.warn("No receipt for order {}", orderNumber);
+                    result.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).<Resource>body(null));
+                } else {
+                    logger.error("Error rendering receipt for order {}", orderNumber, ex);
+                    result.setErrorResult(ex);
+                }
+            }
+        });
 
-        for (ProductPurchase pp : purchase.getProductPurchases()) {
-            logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName() + " at " + "$" + pp.getProduct().getPrice());
-            subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
-        }
+        return result;
+    }
+
+    // both in cents, converted to BigDecimal only when handed to the view; package-private for CheckoutBenchmark
+    long computeSubtotal(Purchase purchase, CouponCode couponCode) {
+
+        long subTotal = purchase.getSubTotalCents();
 
-        if (couponCode.getCode() != null && !couponCode.getCode().isEmpty()) {
-            logger.info("Applying discount for coupon");
-            subTotal = subTotal.multiply(new BigDecimal(0.9));
+        if (couponCode != null && couponCode.getCodes().length > 0) {
+            long discount = couponService.discount(purchase, subTotal, couponCode.getCodes());
+            // guarded, the boxing of the arguments is not free either
+            if (logger.isDebugEnabled()) {
+                logger.debug("coupon {} takes {} cents off", couponCode.getCode(), discount);
+            }
+            subTotal -= discount;
         }
 
         return subTotal;
     }
 
-    private BigDecimal computeShippingCost(Purchase purchase) {
-        BigDecimal shippingCost = new BigDecimal(0);
-
-        for (ProductPurchase pp : purchase.getProductPurchases()) {
-            BigDecimal itemShippingCost = new BigDecimal(0).add(COST_PER_ITEM.multiply(new BigDecimal(pp.getQuantity())));
-            logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName() + " shipping cost of " + itemShippingCost);
-            shippingCost = shippingCost.add(itemShippingCost);
+    long computeShippingCost(Purchase purchase) {
+        // a flat rate per item, so the running item count is all it takes
+        int itemCount = purchase.getItemCount();
+        long shippingCost = lineTotal(COST_PER_ITEM_CENTS, itemCount);
+        if (logger.isDebugEnabled()) {
+            logger.debug("cart has {} items, shipping cost of {} cents", itemCount, shippingCost);
         }
 
         return shippingCost;
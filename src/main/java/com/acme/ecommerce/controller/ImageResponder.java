@@ -0,0 +1,102 @@
+package com.acme.ecommerce.controller;
+
+import com.acme.ecommerce.domain.ProductImage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+// Writes image files without pulling them through the heap: Tomcat's sendfile when the connector
+// supports it, FileChannel.transferTo otherwise. Single byte ranges are honoured.
+final class ImageResponder {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private ImageResponder() {
+    }
+
+    // If-None-Match takes precedence over If-Modified-Since (RFC 7232), ServletWebRequest's combined
+    // check would require both to match. The answer comes from the cached image, the file is never opened.
+    static boolean checkNotModified(ProductImage image, HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.ETAG, image.getETag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, image.getLastModified());
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            return webRequest.checkNotModified(image.getETag());
+        }
+        return webRequest.checkNotModified(image.getLastModified());
+    }
+
+    static void write(ProductImage image, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long length = image.getLength();
+        long start = 0;
+        long end = length - 1;
+
+        response.setContentType(image.getContentType());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException ex) {
+                ranges = null; // malformed Range headers are ignored, the full image is sent
+            }
+            // multipart/byteranges isn't worth it for images, several ranges get the full image as well
+            if (ranges != null && ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(length);
+                    end = Math.min(range.getRangeEnd(length), length - 1);
+                } catch (IllegalArgumentException ex) {
+                    start = length;
+                }
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(count));
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // the connector copies file -> socket in the kernel once the handler returns
+            request.setAttribute(SENDFILE_FILENAME, image.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = new FileInputStream(image.getFile()).getChannel()) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        }
+    }
+}
@@ -3,30 +3,38 @@ package com.acme.ecommerce.controller;
 import static com.acme.ecommerce.controller.CartController.addCart;
 
 import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductImage;
 import com.acme.ecommerce.domain.ProductNotFoundException;
+import com.acme.ecommerce.domain.ProductPage;
 import com.acme.ecommerce.domain.ProductPurchase;
 import com.acme.ecommerce.domain.ShoppingCart;
+import com.acme.ecommerce.domain.Thumbnail;
+import com.acme.ecommerce.service.ImageService;
 import com.acme.ecommerce.service.ProductService;
+import com.acme.ecommerce.service.SearchService;
+import com.acme.ecommerce.service.ThumbnailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.data.domain.Page;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.concurrent.ListenableFutureCallback;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import javax.activation.MimetypesFileTypeMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
 
 @Controller
 @RequestMapping("/product")
@@ -37,23 +45,35 @@ public class ProductController {
 
     private static final int INITIAL_PAGE = 0;
     private static final int PAGE_SIZE = 5;
+    private static final int SEARCH_LIMIT = 50;
+    private static final int SUGGEST_LIMIT = 10;
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
 
     @Autowired
     ProductService productService;
 
+    @Autowired
+    ImageService imageService;
+
+    @Autowired
+    ThumbnailService thumbnailService;
+
+    @Autowired
+    SearchService searchService;
+
     @Autowired
     ShoppingCart sCart;
 
     @Autowired
     HttpSession session;
 
-    @Value("${imagePath:/images/}")
-    String imagePath;
-
     @RequestMapping("/")
-    public String index(Model model, @RequestParam(value = "page", required = false) Integer page) {
+    public String index(Model model, @RequestParam(value = "page", required = false) Integer page,
+                        @RequestParam(value = "after", required = false) Long after,
+                        @RequestParam(value = "before", required = false) Long before,
+                        @RequestParam(value = "last", required = false) boolean last) {
         logger.debug("Getting Product List");
-        logger.debug("Session ID = " + session.getId());
+        logger.debug("Session ID = {}", session.getId());
 
         // Evaluate page. If requested parameter is null or less than 0 (to
         // prevent exception), return initial size. Otherwise, return value of
@@ -64,16 +84,52 @@ public class ProductController {
             addCart(model, sCart);
         }
 
-        Page<Product> products = productService.findAll(new PageRequest(evalPage, PAGE_SIZE));
+        // The navigation links carry the first/last product id shown, so pages are found by seeking on the
+        // key rather than skipping rows. Only a bare page number (an old bookmark) still needs an offset.
+        ProductPage products;
+        if (after != null) {
+            products = productService.findPageAfter(after, evalPage, PAGE_SIZE);
+        } else if (before != null) {
+            products = productService.findPageBefore(before, evalPage, PAGE_SIZE);
+        } else if (last) {
+            products = productService.findPageBefore(null, evalPage, PAGE_SIZE);
+        } else if (evalPage == INITIAL_PAGE) {
+            products = productService.findPageAfter(null, INITIAL_PAGE, PAGE_SIZE);
+        } else {
+            products = new ProductPage(productService.findAll(new PageRequest(evalPage, PAGE_SIZE)));
+        }
 
         model.addAttribute("products", products);
 
         return "index";
     }
 
+    // results are listed on the index page, as a single page
+    @RequestMapping(path = "/search", method = RequestMethod.GET)
+    public String search(Model model, @RequestParam(value = "q", required = false) String query) {
+        logger.debug("Searching products for {}", query);
+
+        if (sCart.getPurchase() != null) {
+            addCart(model, sCart);
+        }
+
+        List<Product> results = searchService.search(query, SEARCH_LIMIT);
+        model.addAttribute("products", new ProductPage(results, 0, Math.max(1, results.size()), results.size(),
+                false, false));
+        model.addAttribute("query", query);
+
+        return "index";
+    }
+
+    @RequestMapping(path = "/suggest", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<String> suggest(@RequestParam(value = "q", required = false) String prefix) {
+        return searchService.suggest(prefix, SUGGEST_LIMIT);
+    }
+
     @RequestMapping(path = "/detail/{id}", method = RequestMethod.GET)
     public String productDetail(@PathVariable long id, Model model) {
-        logger.debug("Details for Product " + id);
+        logger.debug("Details for Product {}", id);
 
         Product returnProduct = productService.findById(id);
         if (returnProduct != null) {
@@ -86,7 +142,7 @@ public class ProductController {
                 addCart(model, sCart);
             }
         } else {
-            logger.error("Product " + id + " Not Found!");
+            logger.error("Product {} Not Found!", id);
             return "redirect:/error";
         }
 
@@ -94,27 +150,77 @@ public class ProductController {
     }
 
     @RequestMapping(path = "/{id}/image", method = RequestMethod.GET)
-    @ResponseBody
-    public ResponseEntity<InputStreamResource> productImage(@PathVariable long id) throws FileNotFoundException {
-        MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
+    public void productImage(@PathVariable long id, @RequestParam(value = "v", required = false) String version,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        logger.debug("Product Image Request for {}", id);
+
+        Product returnProduct = productService.findById(id);
+        if (returnProduct == null) {
+            throw new ProductNotFoundException(id);
+        }
+        ProductImage image = imageService.findImage(returnProduct);
 
-        logger.debug("Product Image Request for " + id);
-        logger.info("Using imagePath [" + imagePath + "]");
+        // fingerprinted URLs never change content, anything else has to revalidate
+        if (image.getFingerprint().equals(version)) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        } else {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        if (ImageResponder.checkNotModified(image, request, response)) {
+            return;
+        }
+
+        ImageResponder.write(image, request, response);
+    }
+
+    @RequestMapping(path = "/{id}/thumb", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<byte[]>> productThumbnail(@PathVariable long id,
+                                                                   @RequestParam(value = "v", required = false) String version,
+                                                                   HttpServletRequest request, HttpServletResponse response) {
+        logger.debug("Product Thumbnail Request for {}", id);
+        final DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<ResponseEntity<byte[]>>();
 
         Product returnProduct = productService.findById(id);
-        String imageFilePath = null;
-        if (returnProduct != null) {
-            if (!imagePath.endsWith("/")) {
-                imagePath = imagePath + "/";
+        if (returnProduct == null) {
+            throw new ProductNotFoundException(id);
+        }
+
+        // the fingerprint is known without resizing anything, so revalidation never waits on the pipeline
+        String fingerprint = thumbnailService.fingerprint(returnProduct);
+        final String cacheControl = fingerprint.equals(version) ? IMMUTABLE_CACHE_CONTROL : "no-cache";
+        if (!fingerprint.isEmpty()) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            if (new ServletWebRequest(request, response).checkNotModified("\"" + fingerprint + "\"")) {
+                result.setResult(null);
+                return result;
             }
-            imageFilePath = imagePath + returnProduct.getFullImageName();
         }
-        File imageFile = new File(imageFilePath);
 
-        return ResponseEntity.ok()
-                .contentLength(imageFile.length())
-                .contentType(MediaType.parseMediaType(mimeTypesMap.getContentType(imageFile)))
-                .body(new InputStreamResource(new FileInputStream(imageFile)));
+        // headers travel with the entity, the async dispatch may write to a fresh response
+        thumbnailService.findThumbnail(returnProduct).addCallback(new ListenableFutureCallback<Thumbnail>() {
+            @Override
+            public void onSuccess(Thumbnail thumbnail) {
+                result.setResult(ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(thumbnail.getContentType()))
+                        .contentLength(thumbnail.getContent().length)
+                        .eTag(thumbnail.getETag())
+                        .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                        .body(thumbnail.getContent()));
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                if (ex instanceof TaskRejectedException) {
+                    logger.warn("Thumbnail queue full, rejecting request for product {}", id);
+                    result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, "1").<byte[]>body(null));
+                } else {
+                    result.setErrorResult(ex);
+                }
+            }
+        });
+
+        return result;
     }
 
     @RequestMapping(path = "/about")
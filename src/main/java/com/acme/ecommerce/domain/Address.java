@@ -1,5 +1,7 @@
 package com.acme.ecommerce.domain;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.validator.constraints.Email;
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -13,7 +15,12 @@ public class Address implements Serializable {
 	private static final long serialVersionUID = -5920378527592916159L;
 
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(generator = "address_seq")
+	@GenericGenerator(name = "address_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = {
+					@Parameter(name = "sequence_name", value = "address_seq"),
+					@Parameter(name = "increment_size", value = PooledSequenceGenerator.ALLOCATION_SIZE),
+					@Parameter(name = "initial_value", value = PooledSequenceGenerator.INITIAL_VALUE)})
 	@Column(name = "address_id")
 	private Long addressId;
 	
@@ -0,0 +1,148 @@
+package com.acme.ecommerce.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+@Entity
+public class Coupon implements Serializable {
+
+	private static final long serialVersionUID = -3092764145562378401L;
+
+	public enum DiscountType {
+		PERCENT, AMOUNT
+	}
+
+	@Id
+	@GeneratedValue(strategy=GenerationType.AUTO)
+	@Column(name = "coupon_id")
+	private Long couponId;
+
+	@Column(name = "code", nullable = false, unique = true, length = 10)
+	private String code;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "discount_type", nullable = false)
+	private DiscountType discountType;
+
+	// percent (10 = 10%) or an amount of money, depending on the type
+	@Column(name = "discount", nullable = false)
+	private BigDecimal discount;
+
+	// only this product's line is discounted, the whole cart when null
+	@Column(name = "product_id")
+	private Long productId;
+
+	// of the product's line, or of the whole cart
+	@Column(name = "min_quantity")
+	private Integer minQuantity;
+
+	@Column(name = "min_sub_total")
+	private BigDecimal minSubTotal;
+
+	@Column(name = "stackable", nullable = false)
+	private Boolean stackable;
+
+	@Column(name = "active", nullable = false)
+	private Boolean active;
+
+	// coupons are retired by deactivating them, the in-memory index only sees rows changed since its last refresh
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "updated_at", nullable = false)
+	private Date updatedAt;
+
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		updatedAt = new Date();
+	}
+
+	public Long getId() {
+		return couponId;
+	}
+
+	public void setId(Long id) {
+		this.couponId = id;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	public DiscountType getDiscountType() {
+		return discountType;
+	}
+
+	public void setDiscountType(DiscountType discountType) {
+		this.discountType = discountType;
+	}
+
+	public BigDecimal getDiscount() {
+		return discount;
+	}
+
+	public void setDiscount(BigDecimal discount) {
+		this.discount = discount;
+	}
+
+	public Long getProductId() {
+		return productId;
+	}
+
+	public void setProductId(Long productId) {
+		this.productId = productId;
+	}
+
+	public Integer getMinQuantity() {
+		return minQuantity;
+	}
+
+	public void setMinQuantity(Integer minQuantity) {
+		this.minQuantity = minQuantity;
+	}
+
+	public BigDecimal getMinSubTotal() {
+		return minSubTotal;
+	}
+
+	public void setMinSubTotal(BigDecimal minSubTotal) {
+		this.minSubTotal = minSubTotal;
+	}
+
+	public Boolean isStackable() {
+		return stackable;
+	}
+
+	public void setStackable(Boolean stackable) {
+		this.stackable = stackable;
+	}
+
+	public Boolean isActive() {
+		return active;
+	}
+
+	public void setActive(Boolean active) {
+		this.active = active;
+	}
+
+	public Date getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(Date updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "Coupon [couponId=" + couponId + ", code=" + code + ", discountType=" + discountType + ", discount="
+				+ discount + ", productId=" + productId + ", minQuantity=" + minQuantity + ", minSubTotal="
+				+ minSubTotal + ", stackable=" + stackable + ", active=" + active + ", updatedAt=" + updatedAt + "]";
+	}
+
+}
@@ -10,16 +10,28 @@ import javax.validation.constraints.Size;
 @Scope("session")
 public class CouponCode {
 
+	private static final String[] NO_CODES = new String[0];
+
 	// @Size(min = 5, max = 10)
-	@Pattern(regexp="(^$|.{5,10})")
+	// one or more codes separated by commas or spaces, each of them 5 to 10 characters
+	@Pattern(regexp="(^$|\\s*[^\\s,]{5,10}([\\s,]+[^\\s,]{5,10})*[\\s,]*)")
 	private String code;
 
+	// split once when the form is bound, not on every price calculation
+	private String[] codes = NO_CODES;
+
 	public String getCode() {
 		return code;
 	}
 
 	public void setCode(String code) {
 		this.code = code;
+		String trimmed = code == null ? "" : code.trim();
+		this.codes = trimmed.isEmpty() ? NO_CODES : trimmed.split("[\\s,]+");
+	}
+
+	public String[] getCodes() {
+		return codes;
 	}
 
 }
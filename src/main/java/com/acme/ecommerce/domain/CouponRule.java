@@ -0,0 +1,75 @@
+package com.acme.ecommerce.domain;
+
+import static com.acme.ecommerce.domain.PriceCalculator.lineTotal;
+import static com.acme.ecommerce.domain.PriceCalculator.percentOff;
+import static com.acme.ecommerce.domain.PriceCalculator.toCents;
+
+// A coupon compiled for checkout: cents and basis points instead of BigDecimal, nulls resolved up front.
+// Applying one is a few long comparisons plus at most one indexed line lookup.
+public final class CouponRule {
+
+	private final String code;
+	private final boolean percent;
+	private final long discount; // basis points or cents
+	private final Long productId;
+	private final int minQuantity;
+	private final long minSubTotalCents;
+	private final boolean stackable;
+
+	private CouponRule(Coupon coupon) {
+		this.code = coupon.getCode();
+		this.percent = coupon.getDiscountType() == Coupon.DiscountType.PERCENT;
+		this.discount = percent
+				? coupon.getDiscount().movePointRight(2).intValueExact()
+				: toCents(coupon.getDiscount());
+		this.productId = coupon.getProductId();
+		this.minQuantity = coupon.getMinQuantity() == null ? 0 : coupon.getMinQuantity();
+		this.minSubTotalCents = coupon.getMinSubTotal() == null ? 0 : toCents(coupon.getMinSubTotal());
+		this.stackable = Boolean.TRUE.equals(coupon.isStackable());
+	}
+
+	public static CouponRule compile(Coupon coupon) {
+		return new CouponRule(coupon);
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public boolean isStackable() {
+		return stackable;
+	}
+
+	// cents off the cart; amounts on a product come off each unit, never more than the line itself
+	public long discount(Purchase purchase, long subTotalCents) {
+		if (subTotalCents < minSubTotalCents) {
+			return 0;
+		}
+		long base;
+		int quantity;
+		if (productId == null) {
+			base = subTotalCents;
+			quantity = purchase.getItemCount();
+			if (quantity < minQuantity) {
+				return 0;
+			}
+			quantity = 1;
+		} else {
+			ProductPurchase line = purchase.findProductPurchase(productId);
+			if (line == null || line.getQuantity() < minQuantity) {
+				return 0;
+			}
+			quantity = line.getQuantity();
+			base = lineTotal(line.getProduct().getPriceCents(), quantity);
+		}
+		long off = percent ? base - percentOff(base, (int) discount) : lineTotal(discount, quantity);
+		return Math.min(off, base);
+	}
+
+	@Override
+	public String toString() {
+		return "CouponRule [code=" + code + ", percent=" + percent + ", discount=" + discount + ", productId="
+				+ productId + ", minQuantity=" + minQuantity + ", minSubTotalCents=" + minSubTotalCents
+				+ ", stackable=" + stackable + "]";
+	}
+}
@@ -0,0 +1,49 @@
+package com.acme.ecommerce.domain;
+
+// Counts for one catalog import, or for the one still running
+public class ImportResult {
+
+	private final boolean running;
+	private final long rowsRead;
+	private final long rowsWritten;
+	private final long rowsRejected;
+	private final long elapsedMillis;
+
+	public ImportResult(boolean running, long rowsRead, long rowsWritten, long rowsRejected, long elapsedMillis) {
+		this.running = running;
+		this.rowsRead = rowsRead;
+		this.rowsWritten = rowsWritten;
+		this.rowsRejected = rowsRejected;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getRowsPerSecond() {
+		return elapsedMillis == 0 ? 0 : rowsWritten * 1000 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "ImportResult [running=" + running + ", rowsRead=" + rowsRead + ", rowsWritten=" + rowsWritten
+				+ ", rowsRejected=" + rowsRejected + ", elapsedMillis=" + elapsedMillis + "]";
+	}
+}
@@ -2,6 +2,10 @@ package com.acme.ecommerce.domain;
 
 public class OrderQuantityGreaterThanStockException extends RuntimeException {
     public OrderQuantityGreaterThanStockException(Product product) {
-        super("Insufficient product in stock. There are only " + product.getQuantity() + " of " + product.getName() + " available.");
+        this(product, product.getQuantity());
+    }
+
+    public OrderQuantityGreaterThanStockException(Product product, int available) {
+        super("Insufficient product in stock. There are only " + available + " of " + product.getName() + " available.");
     }
 }
@@ -0,0 +1,16 @@
+package com.acme.ecommerce.domain;
+
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+// Enhanced sequence with the pooled optimizer: one sequence call hands out a whole block of ids, and
+// unlike identity columns the ids are known before the INSERT, so inserts can be batched.
+// The allocation size and initial value are mapping parameters on each @GenericGenerator: pooled ids are
+// only safe while every node writing to the database agrees on the increment, so it is not a per-node setting.
+// Ids below the initial value are left to seed and fixture rows; it only matters when the schema is generated.
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+	public static final String STRATEGY = "com.acme.ecommerce.domain.PooledSequenceGenerator";
+
+	public static final String ALLOCATION_SIZE = "50";
+	public static final String INITIAL_VALUE = "1000";
+}
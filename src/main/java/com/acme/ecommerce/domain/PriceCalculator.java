@@ -0,0 +1,41 @@
+package com.acme.ecommerce.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point money: amounts are long cents, BigDecimal only at the edges (entity prices in, view values out).
+// Rounding is half-up to the cent and happens once, where a fraction of a cent can appear.
+public final class PriceCalculator {
+
+	public static final int CENTS_SCALE = 2;
+	public static final int BASIS_POINTS = 10000;
+
+	private PriceCalculator() {
+	}
+
+	public static long toCents(BigDecimal amount) {
+		return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal toDecimal(long cents) {
+		return BigDecimal.valueOf(cents, CENTS_SCALE);
+	}
+
+	public static long lineTotal(long unitCents, int quantity) {
+		return Math.multiplyExact(unitCents, (long) quantity);
+	}
+
+	// basis points, 1000 = 10%; the discount is rounded half-up, never the remaining amount
+	public static long percentOff(long cents, int basisPoints) {
+		return cents - divideHalfUp(Math.multiplyExact(cents, (long) basisPoints), BASIS_POINTS);
+	}
+
+	static long divideHalfUp(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (Math.abs(remainder) * 2 >= divisor) {
+			quotient += Long.signum(dividend);
+		}
+		return quotient;
+	}
+}
@@ -1,14 +1,22 @@
 package com.acme.ecommerce.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.math.BigDecimal;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Product.CACHE_REGION)
 public class Product implements Serializable {
 
 	private static final long serialVersionUID = 8217376139341892205L;
 
+	// second-level cache region, sized in ehcache-hibernate.xml
+	public static final String CACHE_REGION = "com.acme.ecommerce.domain.Product";
+
 	@Id
 	@GeneratedValue(strategy=GenerationType.AUTO)
 	@Column(name = "product_id")
@@ -31,6 +39,10 @@ public class Product implements Serializable {
 	
 	@Column(name = "quantity", nullable = false)
 	private Integer quantity;
+
+	// price in cents, converted once instead of on every cart total
+	private transient long priceCents;
+	private transient boolean priceCentsValid;
 	
 	public Long getId() {
 		return productId;
@@ -78,6 +90,15 @@ public class Product implements Serializable {
 	
 	public void setPrice(BigDecimal price) {
 		this.price = price;
+		this.priceCentsValid = false;
+	}
+
+	public long getPriceCents() {
+		if (!priceCentsValid) {
+			priceCents = price == null ? 0 : PriceCalculator.toCents(price);
+			priceCentsValid = true;
+		}
+		return priceCents;
 	}
 	
 	public Integer getQuantity() {
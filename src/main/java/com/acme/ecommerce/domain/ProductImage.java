@@ -0,0 +1,50 @@
+package com.acme.ecommerce.domain;
+
+import java.io.File;
+
+public class ProductImage {
+
+	private final File file;
+	private final String contentType;
+	private final long length;
+	private final long lastModified;
+	private final String fingerprint;
+
+	public ProductImage(File file, String contentType, long length, long lastModified, String fingerprint) {
+		this.file = file;
+		this.contentType = contentType;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.fingerprint = fingerprint;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getETag() {
+		return "\"" + fingerprint + "\"";
+	}
+
+	@Override
+	public String toString() {
+		return "ProductImage [file=" + file + ", contentType=" + contentType + ", length=" + length
+				+ ", lastModified=" + lastModified + ", fingerprint=" + fingerprint + "]";
+	}
+}
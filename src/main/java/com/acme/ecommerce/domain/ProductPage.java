@@ -0,0 +1,81 @@
+package com.acme.ecommerce.domain;
+
+import org.springframework.data.domain.Page;
+
+import java.util.Iterator;
+import java.util.List;
+
+// One page of the catalog for keyset navigation: the first and last ids are the cursors for the
+// neighbouring pages. The page number is carried along in the links, the total comes from a cached count.
+public class ProductPage implements Iterable<Product> {
+
+	private final List<Product> content;
+	private final int number;
+	private final int size;
+	private final long totalElements;
+	private final boolean previous;
+	private final boolean next;
+
+	public ProductPage(List<Product> content, int number, int size, long totalElements, boolean previous,
+			boolean next) {
+		this.content = content;
+		this.number = number;
+		this.size = size;
+		this.totalElements = totalElements;
+		this.previous = previous;
+		this.next = next;
+	}
+
+	// an offset page, for page numbers requested without a cursor
+	public ProductPage(Page<Product> page) {
+		this(page.getContent(), page.getNumber(), page.getSize(), page.getTotalElements(), page.hasPrevious(),
+				page.hasNext());
+	}
+
+	@Override
+	public Iterator<Product> iterator() {
+		return content.iterator();
+	}
+
+	public List<Product> getContent() {
+		return content;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public long getTotalElements() {
+		return totalElements;
+	}
+
+	public int getTotalPages() {
+		return size == 0 ? 1 : (int) Math.max(1, (totalElements + size - 1) / size);
+	}
+
+	public boolean hasPrevious() {
+		return previous;
+	}
+
+	public boolean hasNext() {
+		return next;
+	}
+
+	public Long getFirstId() {
+		return content.isEmpty() ? null : content.get(0).getId();
+	}
+
+	public Long getLastId() {
+		return content.isEmpty() ? null : content.get(content.size() - 1).getId();
+	}
+
+	@Override
+	public String toString() {
+		return "ProductPage [number=" + number + ", size=" + size + ", totalElements=" + totalElements
+				+ ", firstId=" + getFirstId() + ", lastId=" + getLastId() + "]";
+	}
+}
@@ -1,5 +1,8 @@
 package com.acme.ecommerce.domain;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import java.io.Serializable;
 
@@ -9,7 +12,12 @@ public class ProductPurchase implements Serializable {
 	private static final long serialVersionUID = -3665850872024911072L;
 
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(generator = "product_purchase_seq")
+	@GenericGenerator(name = "product_purchase_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = {
+					@Parameter(name = "sequence_name", value = "product_purchase_seq"),
+					@Parameter(name = "increment_size", value = PooledSequenceGenerator.ALLOCATION_SIZE),
+					@Parameter(name = "initial_value", value = PooledSequenceGenerator.INITIAL_VALUE)})
 	@Column(name = "product_purchase_id")
 	private Long productPurchaseId;
 	
@@ -46,6 +54,7 @@ public class ProductPurchase implements Serializable {
 
 	public void setProduct(Product product) {
 		this.product = product;
+		linesChanged();
 	}
 
 	public Integer getQuantity() {
@@ -54,6 +63,19 @@ public class ProductPurchase implements Serializable {
 
 	public void setQuantity(Integer quantity) {
 		this.quantity = quantity;
+		linesChanged();
+	}
+
+	// for the cart's own methods, they adjust its running totals themselves
+	void updateQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	// changed from outside the cart, its totals are walked again on the next read
+	private void linesChanged() {
+		if (purchase != null) {
+			purchase.invalidateTotals();
+		}
 	}
 
 	@Override
@@ -1,9 +1,15 @@
 package com.acme.ecommerce.domain;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Entity
 public class Purchase implements Serializable {  // AKA Shopping Cart
@@ -11,7 +17,12 @@ public class Purchase implements Serializable {  // AKA Shopping Cart
 	private static final long serialVersionUID = -1544211294433636412L;
 	
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(generator = "purchase_seq")
+	@GenericGenerator(name = "purchase_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = {
+					@Parameter(name = "sequence_name", value = "purchase_seq"),
+					@Parameter(name = "increment_size", value = PooledSequenceGenerator.ALLOCATION_SIZE),
+					@Parameter(name = "initial_value", value = PooledSequenceGenerator.INITIAL_VALUE)})
 	@Column(name = "purchase_id")
 	private Long purchaseId;
 	
@@ -33,8 +44,13 @@ public class Purchase implements Serializable {  // AKA Shopping Cart
 	@Column(name = "credit_card_cvc")
 	private String creditCardCVC;
 	
-	@Column(name = "order_number")
+	@Column(name = "order_number", unique = true)
 	private String orderNumber;
+
+	// the generated id behind orderNumber, kept as a number so the newest is one index lookup away;
+	// order numbers from before the generator have none
+	@Column(name = "order_id", unique = true)
+	private Long orderId;
 	
 	@OneToOne(cascade = CascadeType.ALL)
 	@JoinColumn(name="shipping_address_id")
@@ -47,6 +63,14 @@ public class Purchase implements Serializable {  // AKA Shopping Cart
 	@Column(name = "billing_address_same")
 	private Boolean billingAddressSame;
 
+	// product id -> its line, rebuilt lazily after loading or deserializing. It holds the lines themselves
+	// rather than their positions, so taking a line out never renumbers the ones after it.
+	private transient Map<Long, ProductPurchase> lineIndex;
+
+	private transient long subTotalCents;
+	private transient int itemCount;
+	private transient int totalledLines;
+
 	public Long getId() {
 		return purchaseId;
 	}
@@ -59,8 +83,119 @@ public class Purchase implements Serializable {  // AKA Shopping Cart
 		return productPurchases;
 	}
 
-	public void setProductPurchases(List<ProductPurchase> productPurchases) {
+	public synchronized void setProductPurchases(List<ProductPurchase> productPurchases) {
 		this.productPurchases = productPurchases;
+		this.lineIndex = null;
+		this.totalledLines = -1;
+	}
+
+	public synchronized ProductPurchase findProductPurchase(Long productId) {
+		return lineIndex().get(productId);
+	}
+
+	// merges into the existing line for the product, or appends a new one
+	public synchronized ProductPurchase addProductPurchase(Product product, int quantity) {
+		Map<Long, ProductPurchase> index = lineIndex();
+		totals();
+		ProductPurchase productPurchase = index.get(product.getId());
+		if (productPurchase != null) {
+			productPurchase.updateQuantity(productPurchase.getQuantity() + quantity);
+		} else {
+			productPurchase = new ProductPurchase();
+			productPurchase.setProduct(product);
+			productPurchase.setQuantity(quantity);
+			productPurchase.setPurchase(this);
+			productPurchases.add(productPurchase);
+			index.put(product.getId(), productPurchase);
+			totalledLines++;
+		}
+		adjustTotals(product, quantity);
+		return productPurchase;
+	}
+
+	public synchronized ProductPurchase updateProductPurchase(Long productId, int quantity) {
+		totals();
+		ProductPurchase productPurchase = findProductPurchase(productId);
+		if (productPurchase != null) {
+			adjustTotals(productPurchase.getProduct(), quantity - productPurchase.getQuantity());
+			productPurchase.updateQuantity(quantity);
+		}
+		return productPurchase;
+	}
+
+	// the cart keeps the order lines were added in: the list closes the gap with one array copy, the index
+	// is untouched apart from the removed key
+	public synchronized ProductPurchase removeProductPurchase(Long productId) {
+		Map<Long, ProductPurchase> index = lineIndex();
+		totals();
+		ProductPurchase removed = index.remove(productId);
+		if (removed == null) {
+			return null;
+		}
+		productPurchases.remove(removed);
+		totalledLines--;
+		adjustTotals(removed.getProduct(), -removed.getQuantity());
+		return removed;
+	}
+
+	public synchronized void clearProductPurchases() {
+		productPurchases.clear();
+		lineIndex = null;
+		subTotalCents = 0;
+		itemCount = 0;
+		totalledLines = 0;
+	}
+
+	public synchronized long getSubTotalCents() {
+		totals();
+		return subTotalCents;
+	}
+
+	public BigDecimal getSubTotal() {
+		return PriceCalculator.toDecimal(getSubTotalCents());
+	}
+
+	public synchronized int getItemCount() {
+		totals();
+		return itemCount;
+	}
+
+	// also catches lines added or removed behind the index's back, e.g. through getProductPurchases()
+	private Map<Long, ProductPurchase> lineIndex() {
+		if (lineIndex == null || lineIndex.size() != productPurchases.size()) {
+			lineIndex = new HashMap<Long, ProductPurchase>(productPurchases.size() * 2);
+			for (ProductPurchase productPurchase : productPurchases) {
+				Product product = productPurchase.getProduct();
+				if (product != null) {
+					lineIndex.put(product.getId(), productPurchase);
+				}
+			}
+		}
+		return lineIndex;
+	}
+
+	synchronized void invalidateTotals() {
+		totalledLines = -1;
+	}
+
+	// Running totals, only walked again when the list was replaced or resized directly, or a line's
+	// product or quantity was set from outside (ProductPurchase reports that through its back-reference).
+	private void totals() {
+		if (totalledLines != productPurchases.size()) {
+			subTotalCents = 0;
+			itemCount = 0;
+			for (ProductPurchase productPurchase : productPurchases) {
+				adjustTotals(productPurchase.getProduct(), productPurchase.getQuantity());
+			}
+			totalledLines = productPurchases.size();
+		}
+	}
+
+	private void adjustTotals(Product product, int quantity) {
+		itemCount += quantity;
+		if (product != null) {
+			subTotalCents += PriceCalculator.lineTotal(product.getPriceCents(), quantity);
+		}
 	}
 
 	public String getCreditCardNumber() {
@@ -111,6 +246,14 @@ public class Purchase implements Serializable {  // AKA Shopping Cart
 		this.orderNumber = orderNumber;
 	}
 
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(Long orderId) {
+		this.orderId = orderId;
+	}
+
 	public Address getShippingAddress() {
 		return shippingAddress;
 	}
@@ -9,6 +9,8 @@ public class ShoppingCart {
 
 	private Purchase purchase = null;
 	private CouponCode couponCode = null;
+	// kept after the cart is reset, so the receipt can be downloaded again
+	private String lastOrderNumber = null;
 
 	public Purchase getPurchase() {
 		return purchase;
@@ -26,5 +28,13 @@ public class ShoppingCart {
 		this.couponCode = couponCode;
 	}
 
+	public String getLastOrderNumber() {
+		return lastOrderNumber;
+	}
+
+	public void setLastOrderNumber(String lastOrderNumber) {
+		this.lastOrderNumber = lastOrderNumber;
+	}
+
 
 }
@@ -0,0 +1,36 @@
+package com.acme.ecommerce.domain;
+
+public class Thumbnail {
+
+	private final byte[] content;
+	private final String contentType;
+	private final String fingerprint;
+
+	public Thumbnail(byte[] content, String contentType, String fingerprint) {
+		this.content = content;
+		this.contentType = contentType;
+		this.fingerprint = fingerprint;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getETag() {
+		return "\"" + fingerprint + "\"";
+	}
+
+	@Override
+	public String toString() {
+		return "Thumbnail [contentType=" + contentType + ", length=" + content.length + ", fingerprint="
+				+ fingerprint + "]";
+	}
+}
@@ -1,8 +1,18 @@
 package com.acme.ecommerce.repository;
 
 import com.acme.ecommerce.domain.Address;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
 
 public interface AddressRepository extends CrudRepository<Address, Long> {
 
+    @Transactional
+    @Modifying
+    @Query("delete from Address a where a.addressId in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,15 @@
+package com.acme.ecommerce.repository;
+
+import com.acme.ecommerce.domain.Coupon;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.Date;
+import java.util.List;
+
+public interface CouponRepository extends CrudRepository<Coupon, Long> {
+
+    Coupon findByCode(String code);
+
+    // inclusive, rows committed later with the same timestamp as the last refresh are not missed
+    List<Coupon> findByUpdatedAtGreaterThanEqual(Date updatedAt);
+}
@@ -1,8 +1,18 @@
 package com.acme.ecommerce.repository;
 
 import com.acme.ecommerce.domain.ProductPurchase;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
 
 public interface ProductPurchaseRepository extends CrudRepository<ProductPurchase, Long> {
 
+    @Transactional
+    @Modifying
+    @Query("delete from product_purchase pp where pp.purchase.purchaseId in :ids")
+    int deleteByPurchaseIds(@Param("ids") Collection<Long> ids);
 }
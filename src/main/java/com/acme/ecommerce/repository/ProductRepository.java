@@ -1,8 +1,46 @@
 package com.acme.ecommerce.repository;
 
 import com.acme.ecommerce.domain.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface ProductRepository extends PagingAndSortingRepository<Product, Long> {
 
+    // Declared as a query method because the built-in findAll doesn't pass hints to its count query.
+    // Page and count both go through the query cache, the rows themselves come from the Product region.
+    @Query(value = "select p from Product p", countQuery = "select count(p) from Product p")
+    @QueryHints(value = @QueryHint(name = "org.hibernate.cacheable", value = "true"), forCounting = true)
+    @Override
+    Page<Product> findAll(Pageable pageable);
+
+    // Keyset pages: a primary key range seek, however deep the page. Only the pageable's size is used.
+    @Query("select p from Product p where p.productId > :after order by p.productId")
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Product> findAfter(@Param("after") Long after, Pageable pageable);
+
+    // newest first, callers reverse it
+    @Query("select p from Product p where p.productId < :before order by p.productId desc")
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Product> findBefore(@Param("before") Long before, Pageable pageable);
+
+    // invalidated by Hibernate whenever the product table is written through it
+    @Query("select count(p) from Product p")
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    long countCached();
+
+    // Forward-only cursor for bulk reads: rows arrive in blocks of the fetch size as the stream is consumed,
+    // read-only and past the second-level cache. Has to be consumed inside a transaction, and closed.
+    @Query("select p from Product p order by p.productId")
+    @QueryHints({@QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheMode", value = "IGNORE")})
+    Stream<Product> streamAll();
 }
@@ -1,8 +1,39 @@
 package com.acme.ecommerce.repository;
 
 import com.acme.ecommerce.domain.Purchase;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface PurchaseRepository extends CrudRepository<Purchase, Long> {
 
+    // a cart or order with its lines, their products and both addresses in a single select
+    @Query("select distinct p from Purchase p left join fetch p.productPurchases pp left join fetch pp.product"
+            + " left join fetch p.shippingAddress left join fetch p.billingAddress where p.purchaseId = :id")
+    Purchase findWithLines(@Param("id") Long id);
+
+    @Query("select distinct p from Purchase p left join fetch p.productPurchases pp left join fetch pp.product"
+            + " left join fetch p.shippingAddress left join fetch p.billingAddress where p.orderNumber = :orderNumber")
+    Purchase findOrderWithLines(@Param("orderNumber") String orderNumber);
+
+    // the newest order id handed out by any node, read once at startup
+    @Query("select max(p.orderId) from Purchase p")
+    Long findMaxOrderId();
+
+    // carts only, placed orders are never purged
+    @Query("select p.purchaseId from Purchase p where p.purchaseId in :ids and p.orderNumber is null")
+    List<Long> findCartIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select s.addressId, b.addressId from Purchase p left join p.shippingAddress s left join p.billingAddress b where p.purchaseId in :ids")
+    List<Object[]> findAddressIds(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Purchase p where p.purchaseId in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
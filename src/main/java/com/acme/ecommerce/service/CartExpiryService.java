@@ -0,0 +1,12 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Purchase;
+
+public interface CartExpiryService {
+
+    public void touch(Purchase purchase);
+
+    public void untrack(Purchase purchase);
+
+    public int expire();
+}
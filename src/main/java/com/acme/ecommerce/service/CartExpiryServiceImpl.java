@@ -0,0 +1,188 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Purchase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+// Hashed timing wheel over cart deadlines. A touch only moves the deadline, the entry is re-slotted
+// lazily when the wheel reaches it, so every cart action stays O(1) however many carts are open.
+// Carts are keyed by identity: a cart that hasn't been written yet has no id.
+@Service
+public class CartExpiryServiceImpl implements CartExpiryService {
+
+    final Logger logger = LoggerFactory.getLogger(CartExpiryServiceImpl.class);
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final InventoryService inventoryService;
+    private final PurchaseService purchaseService;
+    private final CartStoreService cartStoreService;
+    private final long ttlMillis;
+    private final long tickMillis;
+    private final int batchSize;
+    private final Clock clock;
+
+    private final ConcurrentMap<Purchase, Entry> entries = new ConcurrentHashMap<Purchase, Entry>();
+    private final List<Queue<Entry>> wheel;
+    private long lastTick;
+
+    @Autowired
+    public CartExpiryServiceImpl(InventoryService inventoryService, PurchaseService purchaseService,
+                                 CartStoreService cartStoreService,
+                                 @Value("${cart.expiry.ttl:1800000}") long ttlMillis,
+                                 @Value("${cart.expiry.tick:1000}") long tickMillis,
+                                 @Value("${cart.expiry.batchSize:500}") int batchSize) {
+        this(inventoryService, purchaseService, cartStoreService, ttlMillis, tickMillis, batchSize, Clock.systemUTC());
+    }
+
+    // the clock is only swapped out by tests
+    @SuppressWarnings("unchecked")
+    CartExpiryServiceImpl(InventoryService inventoryService, PurchaseService purchaseService,
+                          CartStoreService cartStoreService, long ttlMillis, long tickMillis, int batchSize,
+                          Clock clock) {
+        this.inventoryService = inventoryService;
+        this.purchaseService = purchaseService;
+        this.cartStoreService = cartStoreService;
+        this.ttlMillis = ttlMillis;
+        this.tickMillis = tickMillis;
+        this.batchSize = batchSize;
+        this.clock = clock;
+        this.lastTick = clock.millis() / tickMillis - 1;
+        this.wheel = new ArrayList<Queue<Entry>>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ConcurrentLinkedQueue<Entry>());
+        }
+    }
+
+    @Override
+    public void touch(Purchase purchase) {
+        if (purchase == null) {
+            return;
+        }
+        final long deadline = clock.millis() + ttlMillis;
+        entries.compute(purchase, (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry(purchase);
+                entry.deadline = deadline;
+                schedule(entry, deadline / tickMillis);
+            } else {
+                entry.deadline = deadline;
+            }
+            return entry;
+        });
+    }
+
+    // the entry left in its slot is dropped when the wheel gets there
+    @Override
+    public void untrack(Purchase purchase) {
+        if (purchase != null) {
+            entries.remove(purchase);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${cart.expiry.tick:1000}")
+    public void tick() {
+        expire();
+    }
+
+    @Override
+    public synchronized int expire() {
+        long now = clock.millis();
+        long currentTick = now / tickMillis;
+
+        List<Entry> expired = new ArrayList<Entry>();
+        // after a stall one full turn visits every slot, anything further behind is caught by the deadline check
+        long firstTick = Math.max(lastTick + 1, currentTick - WHEEL_SIZE + 1);
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            Queue<Entry> slot = wheel.get((int) (tick & (WHEEL_SIZE - 1)));
+            List<Entry> due = new ArrayList<Entry>();
+            for (Entry entry = slot.poll(); entry != null; entry = slot.poll()) {
+                due.add(entry);
+            }
+            for (Entry entry : due) {
+                // removal is decided under the same per-key lock a touch takes, so a touch can't be lost
+                boolean[] removed = new boolean[1];
+                Entry current = entries.computeIfPresent(entry.purchase, (key, mapped) -> {
+                    removed[0] = mapped == entry && mapped.deadline <= now;
+                    return removed[0] ? null : mapped;
+                });
+                if (removed[0]) {
+                    expired.add(entry);
+                } else if (current == entry) {
+                    // touched since it was slotted, move it to the slot of its new deadline
+                    schedule(entry, Math.max(entry.deadline / tickMillis, currentTick + 1));
+                }
+            }
+        }
+        lastTick = currentTick;
+
+        for (int from = 0; from < expired.size(); from += batchSize) {
+            purge(expired.subList(from, Math.min(from + batchSize, expired.size())));
+        }
+        return expired.size();
+    }
+
+    // The cart forgets its rows under its lock, the write-behind flush takes the same lock. A request that
+    // comes back to the cart after that writes it as new rows, so the bulk delete can only hit rows nothing
+    // refers to any more, however it interleaves with the flush.
+    private void purge(List<Entry> batch) {
+        List<Long> ids = new ArrayList<Long>(batch.size());
+        int expired = 0;
+        for (Entry entry : batch) {
+            Purchase purchase = entry.purchase;
+            synchronized (purchase) {
+                if (purchase.getOrderNumber() != null) {
+                    continue;
+                }
+                cartStoreService.discard(purchase);
+                inventoryService.release(purchase);
+                purchase.clearProductPurchases();
+                if (purchase.getId() != null) {
+                    ids.add(purchase.getId());
+                    purchase.setId(null);
+                }
+                if (purchase.getShippingAddress() != null) {
+                    purchase.getShippingAddress().setId(null);
+                }
+                if (purchase.getBillingAddress() != null) {
+                    purchase.getBillingAddress().setId(null);
+                }
+                expired++;
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            int deleted = purchaseService.deleteAbandoned(ids);
+            logger.info("Expired {} abandoned carts, {} purchase rows purged", expired, deleted);
+        } catch (RuntimeException ex) {
+            logger.error("Unable to purge abandoned carts {}", ids, ex);
+        }
+    }
+
+    private void schedule(Entry entry, long tick) {
+        wheel.get((int) (tick & (WHEEL_SIZE - 1))).add(entry);
+    }
+
+    private static final class Entry {
+        final Purchase purchase;
+        volatile long deadline;
+
+        Entry(Purchase purchase) {
+            this.purchase = purchase;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Purchase;
+
+public interface CartStoreService {
+
+    public void markDirty(Purchase purchase);
+
+    public Purchase flush(Purchase purchase);
+
+    public void discard(Purchase purchase);
+
+    public void flushAll();
+}
@@ -0,0 +1,117 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Write-behind store for carts. The session's Purchase stays authoritative, mutations only mark it dirty
+// and a background flush writes each dirty cart once, however many clicks happened since the last one.
+// Carts are keyed by identity, Purchase doesn't override equals/hashCode.
+@Service
+public class CartStoreServiceImpl implements CartStoreService {
+
+    final Logger logger = LoggerFactory.getLogger(CartStoreServiceImpl.class);
+
+    private final PurchaseService purchaseService;
+    private final int maxPending;
+    private final Timer saveTimer;
+
+    private final ConcurrentMap<Purchase, Boolean> dirty = new ConcurrentHashMap<Purchase, Boolean>();
+
+    @Autowired
+    public CartStoreServiceImpl(PurchaseService purchaseService, MetricRegistry metricRegistry,
+                                @Value("${cart.writeBehind.maxPending:1000}") int maxPending) {
+        this.purchaseService = purchaseService;
+        this.maxPending = maxPending;
+        // timed out here rather than inside PurchaseService so the flush and commit are counted too
+        this.saveTimer = metricRegistry.timer("purchase.save");
+    }
+
+    @Override
+    public void markDirty(Purchase purchase) {
+        dirty.put(purchase, Boolean.TRUE);
+        // durability bound: past this many unwritten carts the caller pays for its own write
+        if (dirty.size() > maxPending) {
+            flush(purchase);
+        }
+    }
+
+    @Override
+    public Purchase flush(Purchase purchase) {
+        dirty.remove(purchase);
+        write(purchase);
+        return purchase;
+    }
+
+    @Override
+    public void discard(Purchase purchase) {
+        dirty.remove(purchase);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.writeBehind.interval:2000}")
+    @PreDestroy
+    @Override
+    public void flushAll() {
+        int written = 0;
+        for (Purchase purchase : dirty.keySet()) {
+            // removed before writing, a mutation racing with the write marks it dirty again
+            if (dirty.remove(purchase) == null) {
+                continue;
+            }
+            try {
+                write(purchase);
+                written++;
+            } catch (RuntimeException ex) {
+                logger.error("Unable to write cart {}, will retry", purchase.getId(), ex);
+                dirty.putIfAbsent(purchase, Boolean.TRUE);
+            }
+        }
+        if (written > 0) {
+            logger.debug("Wrote {} carts", written);
+        }
+    }
+
+    // save() merges into a copy, ids generated for new rows are carried back to the session's cart.
+    // Lines are matched by product, a cart holds one line per product and merge doesn't promise an order.
+    private void write(Purchase purchase) {
+        synchronized (purchase) {
+            Purchase saved;
+            Timer.Context timer = saveTimer.time();
+            try {
+                saved = purchaseService.save(purchase);
+            } finally {
+                timer.stop();
+            }
+            if (saved == null || saved == purchase) {
+                return;
+            }
+            purchase.setId(saved.getId());
+            if (purchase.getShippingAddress() != null && saved.getShippingAddress() != null) {
+                purchase.getShippingAddress().setId(saved.getShippingAddress().getId());
+            }
+            if (purchase.getBillingAddress() != null && saved.getBillingAddress() != null) {
+                purchase.getBillingAddress().setId(saved.getBillingAddress().getId());
+            }
+            for (ProductPurchase savedLine : saved.getProductPurchases()) {
+                if (savedLine.getProduct() == null) {
+                    continue;
+                }
+                ProductPurchase line = purchase.findProductPurchase(savedLine.getProduct().getId());
+                if (line != null) {
+                    line.setProductPurchaseId(savedLine.getProductPurchaseId());
+                }
+            }
+        }
+    }
+}
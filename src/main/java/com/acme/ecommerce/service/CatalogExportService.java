@@ -0,0 +1,12 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.service.CatalogImportService.Format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface CatalogExportService {
+
+    // writes the whole catalog in the import's own format, returns the number of products written
+    public long export(OutputStream out, Format format) throws IOException;
+}
@@ -0,0 +1,115 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static com.acme.ecommerce.service.CatalogImportService.COLUMNS;
+
+// Walks a database cursor and writes each product as soon as it is read. Every entity is detached once
+// written, so the persistence context, like the output buffer, stays the same size for any catalog.
+@Service
+public class CatalogExportServiceImpl implements CatalogExportService {
+
+    private final ProductRepository repository;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public CatalogExportServiceImpl(ProductRepository repository) {
+        this.repository = repository;
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public long export(OutputStream out, Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        JsonGenerator json = jsonFactory.createGenerator(writer);
+        json.setRootValueSeparator(null);
+        if (format == Format.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+        }
+        long count = 0;
+        try (Stream<Product> products = repository.streamAll()) {
+            Iterator<Product> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                Product product = iterator.next();
+                if (format == Format.CSV) {
+                    writeCsv(writer, product);
+                } else {
+                    writeJson(json, product);
+                }
+                entityManager.detach(product);
+                count++;
+            }
+        }
+        json.flush();
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsv(Writer writer, Product product) throws IOException {
+        writer.write(Long.toString(product.getId()));
+        writer.write(',');
+        writer.write(csv(product.getName()));
+        writer.write(',');
+        writer.write(csv(product.getDesc()));
+        writer.write(',');
+        writer.write(csv(product.getThumbImageName()));
+        writer.write(',');
+        writer.write(csv(product.getFullImageName()));
+        writer.write(',');
+        // missing numbers are empty fields too, the headers are already out and the file has to carry on
+        writer.write(product.getPrice() == null ? "" : product.getPrice().toPlainString());
+        writer.write(',');
+        writer.write(product.getQuantity() == null ? "" : product.getQuantity().toString());
+        writer.write('\n');
+    }
+
+    private static void writeJson(JsonGenerator json, Product product) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField(COLUMNS.get(0), product.getId());
+        json.writeStringField(COLUMNS.get(1), product.getName());
+        json.writeStringField(COLUMNS.get(2), product.getDesc());
+        json.writeStringField(COLUMNS.get(3), product.getThumbImageName());
+        json.writeStringField(COLUMNS.get(4), product.getFullImageName());
+        json.writeNumberField(COLUMNS.get(5), product.getPrice());
+        if (product.getQuantity() == null) {
+            json.writeNullField(COLUMNS.get(6));
+        } else {
+            json.writeNumberField(COLUMNS.get(6), product.getQuantity());
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    // quoted only when needed, doubling any quotes (RFC 4180); a missing value is an empty field
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,28 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.ImportResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public interface CatalogImportService {
+
+    // one product per line: CSV with a header row, or newline-delimited JSON objects
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    public static final String TEXT_CSV = "text/csv";
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    // the CSV header and the JSON field names, also what the export writes
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "product_id", "name", "desc", "thumb_image_name", "full_image_name", "price", "quantity"));
+
+    public ImportResult importFeed(InputStream feed, Format format) throws IOException;
+
+    public ImportResult getProgress();
+}
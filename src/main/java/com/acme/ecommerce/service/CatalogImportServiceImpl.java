@@ -0,0 +1,444 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.ImportResult;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Streams a supplier feed into the product table. The calling thread only reads lines and hands them
+// out in chunks through bounded queues, so memory stays flat however big the feed is; the import
+// threads parse the chunks and upsert each one as a JDBC batch in its own transaction.
+@Service
+public class CatalogImportServiceImpl implements CatalogImportService {
+
+    final Logger logger = LoggerFactory.getLogger(CatalogImportServiceImpl.class);
+
+    // H2's upsert: the row with the same product_id is updated, otherwise one is inserted
+    private static final String MERGE_PRODUCT = "merge into product (product_id, name, desc, thumb_image_name, "
+            + "full_image_name, price, quantity) key (product_id) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final long PROGRESS_INTERVAL = 100000;
+    // a stray quote would otherwise pull the rest of the feed into one record
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    private static final Chunk END = new Chunk(0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AsyncTaskExecutor executor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    private final int threads;
+    private final int batchSize;
+    private final String seed;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private volatile long startedAt;
+    private volatile ImportResult lastResult = new ImportResult(false, 0, 0, 0, 0);
+
+    @Autowired
+    public CatalogImportServiceImpl(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                    @Qualifier("importExecutor") AsyncTaskExecutor executor,
+                                    ApplicationEventPublisher eventPublisher,
+                                    @Value("${catalog.import.threads:4}") int threads,
+                                    @Value("${catalog.import.batchSize:1000}") int batchSize,
+                                    @Value("${catalog.seed:classpath:catalog/products.csv}") String seed) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.eventPublisher = eventPublisher;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.seed = seed;
+    }
+
+    // An empty product table is filled from the seed feed (this used to be row-by-row inserts in import.sql).
+    // Done once the context is up, so the listeners for the import event are in place, and ahead of the
+    // other refresh listeners, so the search index is first built with the seeded catalog.
+    @EventListener(ContextRefreshedEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void seed() throws IOException {
+        if (seed.isEmpty() || jdbcTemplate.queryForObject("select count(*) from product", Long.class) > 0) {
+            return;
+        }
+        try (InputStream feed = new DefaultResourceLoader().getResource(seed).getInputStream()) {
+            importFeed(feed, seed.toLowerCase(Locale.ROOT).endsWith(".csv") ? Format.CSV : Format.NDJSON);
+        }
+    }
+
+    @Override
+    public ImportResult importFeed(InputStream feed, Format format) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A catalog import is already running");
+        }
+        rowsRead.set(0);
+        rowsWritten.set(0);
+        rowsRejected.set(0);
+        startedAt = System.currentTimeMillis();
+        try {
+            load(new BufferedReader(new InputStreamReader(feed, StandardCharsets.UTF_8)), format);
+        } finally {
+            lastResult = snapshot(false);
+            running.set(false);
+            // even a failed import may have written some batches
+            if (lastResult.getRowsWritten() > 0) {
+                eventPublisher.publishEvent(new CatalogImportedEvent(lastResult));
+            }
+        }
+        logger.info("Catalog import finished: {} rows written, {} rejected, {} rows/s",
+                lastResult.getRowsWritten(), lastResult.getRowsRejected(), lastResult.getRowsPerSecond());
+        return lastResult;
+    }
+
+    @Override
+    public ImportResult getProgress() {
+        return running.get() ? snapshot(true) : lastResult;
+    }
+
+    private ImportResult snapshot(boolean running) {
+        return new ImportResult(running, rowsRead.get(), rowsWritten.get(), rowsRejected.get(),
+                System.currentTimeMillis() - startedAt);
+    }
+
+    private void load(BufferedReader reader, Format format) throws IOException {
+        long lineNumber = 0;
+        int[] columns = null;
+        if (format == Format.CSV) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            lineNumber++;
+            columns = columns(parseCsv(header.startsWith("\uFEFF") ? header.substring(1) : header));
+        }
+
+        // Rows are split between the writers by product id: all the rows for a product go through one writer
+        // in feed order, so the last one wins and two batches never merge the same row at once. Two chunks
+        // per thread keeps the writers busy without reading ahead of them.
+        List<BlockingQueue<Chunk>> queues = new ArrayList<BlockingQueue<Chunk>>(threads);
+        AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        List<Future<?>> writers = new ArrayList<Future<?>>(threads);
+        int[] positions = columns;
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(2);
+            queues.add(queue);
+            writers.add(executor.submit(() -> write(queue, format, positions, failure)));
+        }
+
+        try {
+            Chunk[] chunks = new Chunk[threads];
+            for (int i = 0; i < threads; i++) {
+                chunks[i] = new Chunk(batchSize);
+            }
+            String line;
+            while (failure.get() == null && (line = reader.readLine()) != null) {
+                long start = ++lineNumber;
+                if (format == Format.CSV) {
+                    // a quoted field may run over several lines: the record ends where its quotes balance
+                    boolean open = oddQuotes(line);
+                    if (open) {
+                        StringBuilder record = new StringBuilder(line);
+                        String next;
+                        while (open && record.length() < MAX_RECORD_LENGTH && (next = reader.readLine()) != null) {
+                            lineNumber++;
+                            record.append('\n').append(next);
+                            open ^= oddQuotes(next);
+                        }
+                        line = record.toString();
+                    }
+                }
+                Long id = id(line, format, columns);
+                int writer = id == null ? 0 : (int) Math.floorMod(id, (long) threads);
+                chunks[writer].add(id, start, line);
+                if (chunks[writer].lines.size() == batchSize) {
+                    Uninterruptibles.putUninterruptibly(queues.get(writer), chunks[writer]);
+                    chunks[writer] = new Chunk(batchSize);
+                }
+                if (rowsRead.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+                    ImportResult progress = snapshot(true);
+                    logger.info("Catalog import: {} rows read, {} written, {} rows/s",
+                            progress.getRowsRead(), progress.getRowsWritten(), progress.getRowsPerSecond());
+                }
+            }
+            for (int i = 0; i < threads; i++) {
+                if (!chunks[i].lines.isEmpty()) {
+                    Uninterruptibles.putUninterruptibly(queues.get(i), chunks[i]);
+                }
+            }
+        } finally {
+            // the writers drain the queue whatever happened, so these always get through
+            for (BlockingQueue<Chunk> queue : queues) {
+                Uninterruptibles.putUninterruptibly(queue, END);
+            }
+            for (Future<?> writer : writers) {
+                try {
+                    Uninterruptibles.getUninterruptibly(writer);
+                } catch (ExecutionException ex) {
+                    failure.compareAndSet(null, new IllegalStateException(ex.getCause()));
+                }
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    // after the first failed batch the rest of the feed is only drained, so the reader never blocks
+    private void write(BlockingQueue<Chunk> chunks, Format format, int[] columns,
+                       AtomicReference<RuntimeException> failure) {
+        List<Object[]> batch = new ArrayList<Object[]>(batchSize);
+        while (true) {
+            Chunk chunk = Uninterruptibles.takeUninterruptibly(chunks);
+            if (chunk == END) {
+                return;
+            }
+            if (failure.get() != null) {
+                continue;
+            }
+            batch.clear();
+            for (int i = 0; i < chunk.lines.size(); i++) {
+                Object[] row = parse(chunk.lines.get(i), format, columns, chunk.lineNumbers[i]);
+                if (row != null) {
+                    batch.add(row);
+                }
+            }
+            try {
+                transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(MERGE_PRODUCT, batch));
+                rowsWritten.addAndGet(batch.size());
+            } catch (RuntimeException ex) {
+                logger.error("Catalog import batch starting at line {} failed", chunk.lineNumbers[0], ex);
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+
+    // just the product id, to route the row; null when there's no readable one, the writer rejects those rows
+    private Long id(String line, Format format, int[] columns) {
+        try {
+            String id = format == Format.CSV ? csvField(line, columns[0]) : jsonField(line, COLUMNS.get(0));
+            return id == null ? null : Long.valueOf(id.trim());
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    // null for blank lines, and for rows that don't make a valid product: those are counted and skipped
+    private Object[] parse(String line, Format format, int[] columns, long lineNumber) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String[] fields = format == Format.CSV ? select(parseCsv(line), columns) : select(objectMapper.readTree(line));
+            BigDecimal price = new BigDecimal(required(fields[5]));
+            int quantity = Integer.parseInt(required(fields[6]));
+            if (price.signum() < 0 || quantity < 0) {
+                throw new IllegalArgumentException("negative price or quantity");
+            }
+            return new Object[]{Long.valueOf(required(fields[0])), required(fields[1]), required(fields[2]),
+                    required(fields[3]), required(fields[4]), price, quantity};
+        } catch (IOException | RuntimeException ex) {
+            rowsRejected.incrementAndGet();
+            logger.debug("Rejected catalog line {}: {}", lineNumber, ex.toString());
+            return null;
+        }
+    }
+
+    private static String required(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("missing value");
+        }
+        return value.trim();
+    }
+
+    // position of each of COLUMNS in the header, so feeds may order (or add) columns as they like
+    private static int[] columns(List<String> header) {
+        int[] columns = new int[COLUMNS.size()];
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            columns[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (header.get(j).trim().equalsIgnoreCase(COLUMNS.get(i))) {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Catalog feed has no " + COLUMNS.get(i) + " column");
+            }
+        }
+        return columns;
+    }
+
+    private static String[] select(List<String> values, int[] columns) {
+        String[] fields = new String[COLUMNS.size()];
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            fields[i] = columns[i] < values.size() ? values.get(columns[i]) : null;
+        }
+        return fields;
+    }
+
+    private static String[] select(JsonNode object) {
+        String[] fields = new String[COLUMNS.size()];
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            JsonNode value = object.get(COLUMNS.get(i));
+            fields[i] = value == null || value.isNull() ? null : value.asText();
+        }
+        return fields;
+    }
+
+    // doubled quotes inside a field come in pairs, so an odd count leaves a quoted field open
+    private static boolean oddQuotes(String line) {
+        boolean odd = false;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                odd = !odd;
+            }
+        }
+        return odd;
+    }
+
+    // one field of a record, read no further than that field; quoting as in parseCsv
+    static String csvField(String line, int index) {
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int current = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                if (current == index) {
+                    return field.toString();
+                }
+                field.setLength(0);
+                current++;
+            } else {
+                field.append(c);
+            }
+        }
+        return current == index && !quoted ? field.toString() : null;
+    }
+
+    // one top-level field of a JSON object, read without building the tree
+    private String jsonField(String line, String name) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals(name)) {
+                    return value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    // RFC 4180 fields of one record: quoted fields may hold commas, doubled quotes and line breaks
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class Chunk {
+
+        // the line each record starts on, for the log
+        private final long[] lineNumbers;
+        private final List<String> lines;
+        // where each product's row sits, a later row for the same id takes its place
+        private final Map<Long, Integer> positions = new HashMap<Long, Integer>();
+
+        private Chunk(int size) {
+            this.lineNumbers = new long[size];
+            this.lines = new ArrayList<String>(size);
+        }
+
+        private void add(Long id, long lineNumber, String line) {
+            Integer position = id == null ? null : positions.putIfAbsent(id, lines.size());
+            if (position == null) {
+                lineNumbers[lines.size()] = lineNumber;
+                lines.add(line);
+            } else {
+                lineNumbers[position] = lineNumber;
+                lines.set(position, line);
+            }
+        }
+    }
+}
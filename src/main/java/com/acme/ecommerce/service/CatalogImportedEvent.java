@@ -0,0 +1,18 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.ImportResult;
+
+// Published once an import has written products behind Hibernate's back: anything derived from the
+// product table (caches, the search index, stock counters) has to be rebuilt from it.
+public class CatalogImportedEvent {
+
+    private final ImportResult result;
+
+    public CatalogImportedEvent(ImportResult result) {
+        this.result = result;
+    }
+
+    public ImportResult getResult() {
+        return result;
+    }
+}
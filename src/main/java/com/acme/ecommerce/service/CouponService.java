@@ -0,0 +1,12 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Purchase;
+
+public interface CouponService {
+
+    public boolean isValid(String code);
+
+    public long discount(Purchase purchase, long subTotalCents, String... codes);
+
+    public void refresh();
+}
@@ -0,0 +1,123 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Coupon;
+import com.acme.ecommerce.domain.CouponRule;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Active coupons live in memory as compiled rules keyed by code, so checkout never queries for them.
+// The index is loaded once and then refreshed with the rows changed since the newest one it has seen.
+@Service
+public class CouponServiceImpl implements CouponService {
+
+    final Logger logger = LoggerFactory.getLogger(CouponServiceImpl.class);
+
+    private final CouponRepository couponRepository;
+
+    private final ConcurrentMap<String, CouponRule> rules = new ConcurrentHashMap<String, CouponRule>();
+    // the rule each coupon row is indexed under, only touched by refresh
+    private final Map<Long, CouponRule> rulesById = new HashMap<Long, CouponRule>();
+    private volatile Date watermark;
+
+    @Autowired
+    public CouponServiceImpl(CouponRepository couponRepository) {
+        this.couponRepository = couponRepository;
+    }
+
+    @Override
+    public boolean isValid(String code) {
+        return code != null && rules.containsKey(key(code));
+    }
+
+    // stackable coupons add up, any other coupon only counts on its own: the better of the two wins.
+    // A code entered twice counts once.
+    @Override
+    public long discount(Purchase purchase, long subTotalCents, String... codes) {
+        long best = 0;
+        long stacked = 0;
+        CouponRule[] applied = new CouponRule[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            String code = codes[i];
+            if (code == null || code.isEmpty()) {
+                continue;
+            }
+            CouponRule rule = rules.get(key(code));
+            if (rule == null || contains(applied, i, rule)) {
+                continue;
+            }
+            applied[i] = rule;
+            long discount = rule.discount(purchase, subTotalCents);
+            if (rule.isStackable()) {
+                stacked += discount;
+            } else {
+                best = Math.max(best, discount);
+            }
+        }
+        return Math.min(subTotalCents, Math.max(best, stacked));
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${coupon.refreshInterval:30000}")
+    @Override
+    public synchronized void refresh() {
+        Date since = watermark;
+        Iterable<Coupon> changed = since == null
+                ? couponRepository.findAll() : couponRepository.findByUpdatedAtGreaterThanEqual(since);
+        int count = 0;
+        for (Coupon coupon : changed) {
+            if (coupon.getUpdatedAt() != null && (since == null || coupon.getUpdatedAt().after(since))) {
+                since = coupon.getUpdatedAt();
+            }
+            // a renamed row leaves its old code behind, unless another coupon has taken that code since
+            CouponRule previous = coupon.getId() == null ? null : rulesById.remove(coupon.getId());
+            if (previous != null) {
+                rules.remove(key(previous.getCode()), previous);
+            }
+            String key = key(coupon.getCode());
+            if (!Boolean.TRUE.equals(coupon.isActive())) {
+                rules.remove(key);
+                continue;
+            }
+            try {
+                CouponRule rule = CouponRule.compile(coupon);
+                rules.put(key, rule);
+                if (coupon.getId() != null) {
+                    rulesById.put(coupon.getId(), rule);
+                }
+                count++;
+            } catch (RuntimeException ex) {
+                // a malformed row must not stop the others, or keep an older version of itself around
+                rules.remove(key);
+                logger.warn("Skipping coupon {}: {}", coupon.getCode(), ex.toString());
+            }
+        }
+        watermark = since;
+        logger.debug("Refreshed {} coupons, {} active", count, rules.size());
+    }
+
+    private static boolean contains(CouponRule[] rules, int length, CouponRule rule) {
+        for (int i = 0; i < length; i++) {
+            if (rules[i] == rule) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,15 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductImage;
+
+import java.io.FileNotFoundException;
+
+public interface ImageService {
+
+    public ProductImage findImage(Product product) throws FileNotFoundException;
+
+    public ProductImage findThumbImage(Product product) throws FileNotFoundException;
+
+    public String fingerprint(Product product);
+}
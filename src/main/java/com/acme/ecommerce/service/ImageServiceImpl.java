@@ -0,0 +1,95 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.activation.MimetypesFileTypeMap;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Service("imageService")
+public class ImageServiceImpl implements ImageService {
+
+    final Logger logger = LoggerFactory.getLogger(ImageServiceImpl.class);
+
+    @Value("${imagePath:/images/}")
+    private String imagePath;
+
+    private final MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
+
+    // resolved and hashed once per version of an image file: a request only checks the file's length and
+    // modification time against the entry, the mime map and the bytes are left alone until they change
+    private final ConcurrentMap<String, ProductImage> images = new ConcurrentHashMap<String, ProductImage>();
+
+    @Override
+    public ProductImage findImage(Product product) throws FileNotFoundException {
+        return findImage(product.getFullImageName());
+    }
+
+    @Override
+    public ProductImage findThumbImage(Product product) throws FileNotFoundException {
+        return findImage(product.getThumbImageName());
+    }
+
+    private ProductImage findImage(String imageName) throws FileNotFoundException {
+        String imageFilePath = imageFilePath(imageName);
+        ProductImage image = images.get(imageFilePath);
+        if (image == null || !current(image)) {
+            try {
+                image = resolve(imageFilePath);
+            } catch (FileNotFoundException ex) {
+                images.remove(imageFilePath);
+                throw ex;
+            }
+            images.put(imageFilePath, image);
+        }
+        return image;
+    }
+
+    // a file replaced in place (or deleted: both read as 0) no longer matches what was hashed
+    private static boolean current(ProductImage image) {
+        File file = image.getFile();
+        return file.lastModified() == image.getLastModified() && file.length() == image.getLength();
+    }
+
+    // used by the templates to build cache-busting image URLs
+    @Override
+    public String fingerprint(Product product) {
+        try {
+            return findImage(product).getFingerprint();
+        } catch (FileNotFoundException ex) {
+            logger.warn("No image for product {}: {}", product.getId(), ex.getMessage());
+            return "";
+        }
+    }
+
+    private String imageFilePath(String imageName) {
+        return imagePath.endsWith("/") ? imagePath + imageName : imagePath + "/" + imageName;
+    }
+
+    private ProductImage resolve(String imageFilePath) throws FileNotFoundException {
+        File imageFile = new File(imageFilePath).getAbsoluteFile();
+        if (!imageFile.isFile()) {
+            throw new FileNotFoundException(imageFilePath + " (No such file)");
+        }
+        String fingerprint;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(imageFile))) {
+            fingerprint = DigestUtils.md5DigestAsHex(in);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to read image " + imageFilePath, ex);
+        }
+        return new ProductImage(imageFile, mimeTypesMap.getContentType(imageFile), imageFile.length(),
+                imageFile.lastModified(), fingerprint);
+    }
+}
@@ -0,0 +1,22 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.Purchase;
+
+public interface InventoryService {
+
+    public int available(Product product);
+
+    public void reserve(Product product, int quantity);
+
+    public void release(Product product, int quantity);
+
+    public void release(Purchase purchase);
+
+    public void commit(Purchase purchase);
+
+    public void flush();
+
+    // the product's quantity was set by hand, it replaces the counted stock
+    public void restock(Product product);
+}
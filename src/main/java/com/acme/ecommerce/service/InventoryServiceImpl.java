@@ -0,0 +1,235 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.OrderQuantityGreaterThanStockException;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stock is counted in memory, one CAS word per SKU: on hand in the high 32 bits, reserved in the low 32.
+// Checkouts never take a row lock; committed counts are written back to product.quantity in batches.
+@Service
+public class InventoryServiceImpl implements InventoryService {
+
+    final Logger logger = LoggerFactory.getLogger(InventoryServiceImpl.class);
+
+    private static final String UPDATE_QUANTITY = "update product set quantity = ? where product_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final ConcurrentMap<Long, AtomicLong> stock = new ConcurrentHashMap<Long, AtomicLong>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // reservations held by carts when a catalog import dropped the counters, handed to the new ones
+    private final ConcurrentMap<Long, Integer> carried = new ConcurrentHashMap<Long, Integer>();
+    // a flush never writes back a count that an import or an edit has just replaced
+    private final Object writeBack = new Object();
+
+    @Autowired
+    public InventoryServiceImpl(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public int available(Product product) {
+        long state = counter(product).get();
+        return onHand(state) - reserved(state);
+    }
+
+    @Override
+    public void reserve(Product product, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        AtomicLong counter = counter(product);
+        long state;
+        do {
+            state = counter.get();
+            if (onHand(state) - reserved(state) < quantity) {
+                throw new OrderQuantityGreaterThanStockException(product, onHand(state) - reserved(state));
+            }
+        } while (!counter.compareAndSet(state, pack(onHand(state), reserved(state) + quantity)));
+    }
+
+    // releasing more than is reserved would eat into other carts' reservations, it is a bug in the caller
+    @Override
+    public void release(Product product, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        AtomicLong counter = counter(product);
+        long state;
+        do {
+            state = counter.get();
+            if (reserved(state) < quantity) {
+                throw new IllegalStateException("Releasing " + quantity + " of product " + product.getId()
+                        + " but only " + reserved(state) + " are reserved");
+            }
+        } while (!counter.compareAndSet(state, pack(onHand(state), reserved(state) - quantity)));
+    }
+
+    @Override
+    public void release(Purchase purchase) {
+        for (ProductPurchase pp : purchase.getProductPurchases()) {
+            if (pp.getProduct() != null) {
+                release(pp.getProduct(), pp.getQuantity());
+            }
+        }
+    }
+
+    // Reservations become sales: both counts drop, the new on-hand figure is queued for write-back.
+    // A line that was never reserved would be an oversell, the lines already committed are put back.
+    @Override
+    public void commit(Purchase purchase) {
+        List<ProductPurchase> committed = new ArrayList<ProductPurchase>();
+        for (ProductPurchase pp : purchase.getProductPurchases()) {
+            if (pp.getProduct() == null) {
+                continue;
+            }
+            try {
+                add(pp.getProduct(), -pp.getQuantity());
+            } catch (IllegalStateException ex) {
+                for (ProductPurchase done : committed) {
+                    add(done.getProduct(), done.getQuantity());
+                }
+                throw ex;
+            }
+            committed.add(pp);
+        }
+        for (ProductPurchase pp : committed) {
+            dirty.add(pp.getProduct().getId());
+        }
+    }
+
+    // moves a quantity into (positive) or out of (negative) both on hand and reserved
+    private void add(Product product, int quantity) {
+        AtomicLong counter = counter(product);
+        long state;
+        do {
+            state = counter.get();
+            if (reserved(state) + quantity < 0 || onHand(state) + quantity < 0) {
+                throw new IllegalStateException("Committing " + -quantity + " of product " + product.getId()
+                        + " but only " + reserved(state) + " are reserved and " + onHand(state) + " on hand");
+            }
+        } while (!counter.compareAndSet(state, pack(onHand(state) + quantity, reserved(state) + quantity)));
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.flushInterval:5000}")
+    @PreDestroy
+    @Override
+    public void flush() {
+        synchronized (writeBack) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            List<Long> ids = new ArrayList<Long>();
+            List<Object[]> batch = new ArrayList<Object[]>();
+            for (Long id : dirty) {
+                // removed before reading, so a commit racing with the flush re-marks the SKU
+                dirty.remove(id);
+                AtomicLong counter = stock.get(id);
+                if (counter != null) {
+                    ids.add(id);
+                    batch.add(new Object[]{onHand(counter.get()), id});
+                }
+            }
+            jdbcTemplate.batchUpdate(UPDATE_QUANTITY, batch);
+            logger.debug("Flushed stock levels for {} products", batch.size());
+
+            // the update bypasses Hibernate, so its second-level entries have to go as well. Cached pages
+            // hold ids only and pick the fresh rows up from the entity region.
+            javax.persistence.Cache productRegion = entityManagerFactory.getCache();
+            for (Long id : ids) {
+                productRegion.evict(Product.class, id);
+            }
+        }
+    }
+
+    // An edited quantity wins over the count kept here, like an import does for its rows: the pending
+    // write-back is dropped and the counter starts again from the product, keeping what carts reserved.
+    @Override
+    public void restock(Product product) {
+        synchronized (writeBack) {
+            dirty.remove(product.getId());
+            AtomicLong counter = stock.get(product.getId());
+            if (counter == null) {
+                return;
+            }
+            long state;
+            do {
+                state = counter.get();
+            } while (!counter.compareAndSet(state, pack(product.getQuantity(), reserved(state))));
+        }
+    }
+
+    // The imported quantities are the supplier's counts and win over anything counted here: pending
+    // write-backs are dropped and counters are seeded again from the new rows. Carts keep what they
+    // reserved, so their later releases and commits still add up. Every cached product goes too.
+    @EventListener
+    public void catalogImported(CatalogImportedEvent event) {
+        synchronized (writeBack) {
+            dirty.clear();
+            for (Long id : stock.keySet()) {
+                AtomicLong counter = stock.remove(id);
+                int reserved = counter == null ? 0 : reserved(counter.get());
+                if (reserved > 0) {
+                    carried.merge(id, reserved, Integer::sum);
+                }
+            }
+        }
+        entityManagerFactory.getCache().evict(Product.class);
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+        logger.debug("Dropped stock counters and cached products after a catalog import");
+    }
+
+    // seeded from the product row the first time a SKU is touched, authoritative from then on
+    private AtomicLong counter(Product product) {
+        AtomicLong counter = stock.get(product.getId());
+        if (counter == null) {
+            AtomicLong created = new AtomicLong(pack(product.getQuantity(), 0));
+            counter = stock.putIfAbsent(product.getId(), created);
+            if (counter == null) {
+                counter = created;
+            }
+            // whoever gets the carried reservations adds them to the counter that won
+            Integer reserved = carried.remove(product.getId());
+            if (reserved != null) {
+                long state;
+                do {
+                    state = counter.get();
+                } while (!counter.compareAndSet(state, pack(onHand(state), reserved(state) + reserved)));
+            }
+        }
+        return counter;
+    }
+
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int onHand(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int reserved(long state) {
+        return (int) state;
+    }
+}
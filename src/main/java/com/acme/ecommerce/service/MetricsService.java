@@ -0,0 +1,20 @@
+package com.acme.ecommerce.service;
+
+public interface MetricsService {
+
+    // cart mutations, one meter per type
+    public static final String CART_ADD = "cart.add";
+    public static final String CART_UPDATE = "cart.update";
+    public static final String CART_REMOVE = "cart.remove";
+    public static final String CART_EMPTY = "cart.empty";
+
+    // adds and updates turned away because the stock was not there
+    public static final String STOCK_REJECTED = "cart.stock.rejected";
+
+    // checkout steps completed, read top to bottom it is the checkout funnel
+    public static final String CHECKOUT_COUPON = "checkout.coupon";
+    public static final String CHECKOUT_SHIPPING = "checkout.shipping";
+    public static final String CHECKOUT_BILLING = "checkout.billing";
+
+    public void mark(String meter);
+}
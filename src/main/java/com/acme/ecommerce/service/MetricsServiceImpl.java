@@ -0,0 +1,22 @@
+package com.acme.ecommerce.service;
+
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+// meters live in the registry the actuator publishes, a mark is a map lookup and a striped add
+@Service
+public class MetricsServiceImpl implements MetricsService {
+
+    private final MetricRegistry registry;
+
+    @Autowired
+    public MetricsServiceImpl(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void mark(String meter) {
+        registry.meter(meter).mark();
+    }
+}
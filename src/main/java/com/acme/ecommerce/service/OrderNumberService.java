@@ -0,0 +1,8 @@
+package com.acme.ecommerce.service;
+
+public interface OrderNumberService {
+
+    public long nextId();
+
+    public String nextOrderNumber();
+}
@@ -0,0 +1,109 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.repository.PurchaseRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Order ids made of milliseconds since EPOCH (41 bits), the node id (10 bits) and a per-millisecond
+// sequence (12 bits): unique across nodes without asking the database, and roughly time-ordered.
+// Threads claim a block of sequence numbers with one CAS and hand them out without touching shared
+// state again, and drop a block once it is a second old so an idle thread's ids stay near the clock.
+// A full millisecond, or a clock that steps back, borrows from the next millisecond
+// instead of waiting, so ids never repeat and never block.
+// Borrowed ids can run ahead of the clock, so a quick restart could hand them out again: on startup
+// the service resumes after the highest order id already saved, which is its high-water mark.
+@Service
+public class OrderNumberServiceImpl implements OrderNumberService {
+
+    static final long EPOCH = 1451606400000L; // 2016-01-01T00:00:00Z
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    static final long MAX_BLOCK_AGE = 1000;
+
+    private final long nodeId;
+    private final int blockSize;
+    private final PurchaseRepository purchaseRepository;
+    private final Clock clock;
+
+    // last claimed (millis - EPOCH) << SEQUENCE_BITS | sequence
+    private final AtomicLong last = new AtomicLong();
+
+    // {next, end, claimed at} of the calling thread's current block
+    private final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(() -> new long[3]);
+
+    @Autowired
+    public OrderNumberServiceImpl(@Value("${orderNumber.nodeId:0}") long nodeId,
+                                  @Value("${orderNumber.blockSize:64}") int blockSize,
+                                  PurchaseRepository purchaseRepository) {
+        this(nodeId, blockSize, purchaseRepository, Clock.systemUTC());
+    }
+
+    OrderNumberServiceImpl(long nodeId, int blockSize, PurchaseRepository purchaseRepository, Clock clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("orderNumber.nodeId must be between 0 and " + MAX_NODE_ID);
+        }
+        if (blockSize < 1 || blockSize > SEQUENCE_MASK + 1) {
+            throw new IllegalArgumentException("orderNumber.blockSize must be between 1 and " + (SEQUENCE_MASK + 1));
+        }
+        this.nodeId = nodeId;
+        this.blockSize = blockSize;
+        this.purchaseRepository = purchaseRepository;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void resume() {
+        Long highest = purchaseRepository.findMaxOrderId();
+        if (highest != null) {
+            resumeAfter(highest);
+        }
+    }
+
+    // never claim a tick at or below the one in an id that was already handed out, by this node or another
+    void resumeAfter(long id) {
+        long tick = (id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS | id & SEQUENCE_MASK;
+        long previous;
+        do {
+            previous = last.get();
+        } while (previous < tick && !last.compareAndSet(previous, tick));
+    }
+
+    @Override
+    public long nextId() {
+        long[] block = blocks.get();
+        long now = clock.millis();
+        if (block[0] == block[1] || now - block[2] > MAX_BLOCK_AGE) {
+            block[0] = claim(now);
+            block[1] = block[0] + blockSize;
+            block[2] = now;
+        }
+        long tick = block[0]++;
+        return (tick >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                | nodeId << SEQUENCE_BITS
+                | tick & SEQUENCE_MASK;
+    }
+
+    @Override
+    public String nextOrderNumber() {
+        return Long.toString(nextId());
+    }
+
+    private long claim(long now) {
+        long earliest = (now - EPOCH) << SEQUENCE_BITS;
+        for (;;) {
+            long previous = last.get();
+            long start = Math.max(earliest, previous + 1);
+            if (last.compareAndSet(previous, start + blockSize - 1)) {
+                return start;
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.acme.ecommerce.service;
 
 import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -10,7 +11,12 @@ public interface ProductService {
 
     public Page<Product> findAll(Pageable pageable);
 
+    // keyset pages: the products after afterId (from the start if null), or before beforeId (the last page if null)
+    public ProductPage findPageAfter(Long afterId, int number, int size);
+
+    public ProductPage findPageBefore(Long beforeId, int number, int size);
+
     public Product findById(Long id);
 
-    public void checkProductStock(Product product, Integer quantity);
+    public Product save(Product product);
 }
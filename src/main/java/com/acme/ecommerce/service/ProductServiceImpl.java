@@ -1,23 +1,34 @@
 package com.acme.ecommerce.service;
 
-import com.acme.ecommerce.domain.OrderQuantityGreaterThanStockException;
 import com.acme.ecommerce.domain.Product;
 import com.acme.ecommerce.domain.ProductNotFoundException;
+import com.acme.ecommerce.domain.ProductPage;
 import com.acme.ecommerce.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Product rows and catalog pages are cached by Hibernate, see PersistenceConfig
 @Service
 public class ProductServiceImpl implements ProductService {
 
     private final ProductRepository repository;
+    private final SearchService searchService;
+    private final InventoryService inventoryService;
 
     @Autowired
-    public ProductServiceImpl(ProductRepository repository) {
+    public ProductServiceImpl(ProductRepository repository, SearchService searchService,
+                              InventoryService inventoryService) {
         this.repository = repository;
+        this.searchService = searchService;
+        this.inventoryService = inventoryService;
     }
 
     @Transactional
@@ -31,6 +42,39 @@ public class ProductServiceImpl implements ProductService {
         return repository.findAll(pageable);
     }
 
+    // one row past the page tells whether there is a next page, without counting
+    @Override
+    public ProductPage findPageAfter(Long afterId, int number, int size) {
+        List<Product> products = new ArrayList<Product>(
+                repository.findAfter(afterId == null ? 0L : afterId, new PageRequest(0, size + 1)));
+        boolean next = products.size() > size;
+        if (next) {
+            products.remove(size);
+        }
+        return new ProductPage(products, number, size, repository.countCached(), afterId != null, next);
+    }
+
+    // the last page is cut at the same boundary offset paging would use, so stepping back lines up with page 1
+    @Override
+    public ProductPage findPageBefore(Long beforeId, int number, int size) {
+        long total = repository.countCached();
+        int limit = size;
+        if (beforeId == null) {
+            number = (int) Math.max(0, (total - 1) / size);
+            limit = (int) Math.max(1, total - (long) number * size);
+        }
+        List<Product> products = new ArrayList<Product>(
+                repository.findBefore(beforeId == null ? Long.MAX_VALUE : beforeId, new PageRequest(0, limit + 1)));
+        boolean previous = products.size() > limit;
+        if (previous) {
+            products.remove(limit);
+        } else {
+            number = 0;
+        }
+        Collections.reverse(products);
+        return new ProductPage(products, number, size, total, previous, beforeId != null);
+    }
+
     // TODO: Rename result to product
     // TODO: Enhancement7: Sh
     @Override
@@ -42,11 +86,12 @@ public class ProductServiceImpl implements ProductService {
         return result;
     }
 
-    // TODO: Bugfix2, Enhancement6
+    @Transactional
     @Override
-    public void checkProductStock(Product product, Integer quantity) {
-        if (quantity > product.getQuantity()) {
-            throw new OrderQuantityGreaterThanStockException(product);
-        }
+    public Product save(Product product) {
+        Product saved = repository.save(product);
+        inventoryService.restock(saved);
+        searchService.index(saved);
+        return saved;
     }
 }
@@ -2,10 +2,16 @@ package com.acme.ecommerce.service;
 
 import com.acme.ecommerce.domain.Purchase;
 
+import java.util.Collection;
+
 public interface PurchaseService {
     public Iterable<Purchase> findAll();
 
     public Purchase findById(Long id);
 
+    public Purchase findByOrderNumber(String orderNumber);
+
     public Purchase save(Purchase purchase);
+
+    public int deleteAbandoned(Collection<Long> ids);
 }
@@ -1,20 +1,31 @@
 package com.acme.ecommerce.service;
 
 import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.AddressRepository;
+import com.acme.ecommerce.repository.ProductPurchaseRepository;
 import com.acme.ecommerce.repository.PurchaseRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 @Transactional
 @Service
 public class PurchaseServiceImpl implements PurchaseService {
 
     private final PurchaseRepository repository;
+    private final ProductPurchaseRepository productPurchaseRepository;
+    private final AddressRepository addressRepository;
 
     @Autowired
-    public PurchaseServiceImpl(PurchaseRepository repository) {
+    public PurchaseServiceImpl(PurchaseRepository repository, ProductPurchaseRepository productPurchaseRepository,
+                               AddressRepository addressRepository) {
         this.repository = repository;
+        this.productPurchaseRepository = productPurchaseRepository;
+        this.addressRepository = addressRepository;
     }
 
     @Override
@@ -22,17 +33,50 @@ public class PurchaseServiceImpl implements PurchaseService {
         return repository.findAll();
     }
 
+    // purchases are loaded to be rendered, so the lines, products and addresses come along
     @Override
     public Purchase findById(Long id) {
-        Purchase result = repository.findOne(id);
+        Purchase result = repository.findWithLines(id);
 
         return result;
     }
 
+    @Override
+    public Purchase findByOrderNumber(String orderNumber) {
+        return repository.findOrderWithLines(orderNumber);
+    }
+
     @Override
     public Purchase save(Purchase purchase) {
         Purchase result = repository.save(purchase);
 
         return result;
     }
+
+    // one statement per table for the whole batch, children first
+    @Override
+    public int deleteAbandoned(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Long> cartIds = repository.findCartIds(ids);
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> addressIds = new ArrayList<Long>();
+        for (Object[] row : repository.findAddressIds(cartIds)) {
+            for (Object addressId : row) {
+                if (addressId != null) {
+                    addressIds.add((Long) addressId);
+                }
+            }
+        }
+
+        productPurchaseRepository.deleteByPurchaseIds(cartIds);
+        int deleted = repository.deleteByIds(cartIds);
+        if (!addressIds.isEmpty()) {
+            addressRepository.deleteByIds(addressIds);
+        }
+        return deleted;
+    }
 }
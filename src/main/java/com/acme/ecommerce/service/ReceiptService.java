@@ -0,0 +1,17 @@
+package com.acme.ecommerce.service;
+
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.File;
+import java.util.Map;
+
+public interface ReceiptService {
+
+    public ListenableFuture<File> findReceipt(String orderNumber, Map<String, Object> variables);
+
+    public long getRenderCount();
+
+    public long getRenderTimeNanos();
+
+    public long getMaxRenderTimeNanos();
+}
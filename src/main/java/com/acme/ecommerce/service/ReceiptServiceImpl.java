@@ -0,0 +1,180 @@
+package com.acme.ecommerce.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// Email receipts are rendered on the receipt pool straight into a spool file, one per order number.
+// The file doubles as the cache for re-downloads; a render already under way is shared, not repeated.
+// Receipts carry names and addresses: the spool lives under the user's home and only its owner can read it.
+@Service
+public class ReceiptServiceImpl implements ReceiptService {
+
+    final Logger logger = LoggerFactory.getLogger(ReceiptServiceImpl.class);
+
+    private static final String TEMPLATE = "email_confirmation";
+    private static final Pattern ORDER_NUMBER = Pattern.compile("[A-Za-z0-9-]{1,40}");
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private final TemplateEngine templateEngine;
+    private final AsyncListenableTaskExecutor executor;
+    private final File spoolDir;
+    private final long retentionMillis;
+
+    private final ConcurrentMap<String, ListenableFuture<File>> rendering = new ConcurrentHashMap<String, ListenableFuture<File>>();
+
+    private final LongAdder renderCount = new LongAdder();
+    private final LongAdder renderTimeNanos = new LongAdder();
+    private final AtomicLong maxRenderTimeNanos = new AtomicLong();
+
+    @Autowired
+    public ReceiptServiceImpl(TemplateEngine templateEngine,
+                              @Qualifier("receiptExecutor") AsyncListenableTaskExecutor executor,
+                              @Value("${receipt.spoolDir:${user.home}/.ecommerce/receipts}") String spoolDir,
+                              @Value("${receipt.retention:604800000}") long retentionMillis) {
+        this.templateEngine = templateEngine;
+        this.executor = executor;
+        this.spoolDir = new File(spoolDir);
+        try {
+            Files.createDirectories(this.spoolDir.toPath(), ownerOnly("rwx------"));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to create receipt spool directory " + this.spoolDir, ex);
+        }
+        this.retentionMillis = retentionMillis;
+    }
+
+    // without variables only an already spooled receipt can be returned
+    @Override
+    public ListenableFuture<File> findReceipt(String orderNumber, Map<String, Object> variables) {
+        if (orderNumber == null || !ORDER_NUMBER.matcher(orderNumber).matches()) {
+            return failed(new IllegalArgumentException("Invalid order number " + orderNumber));
+        }
+        File receipt = new File(spoolDir, "receipt-" + orderNumber + ".html");
+        if (receipt.isFile()) {
+            return new AsyncResult<File>(receipt);
+        }
+        if (variables == null) {
+            return failed(new FileNotFoundException("No receipt for order " + orderNumber));
+        }
+
+        SettableListenableFuture<File> future = new SettableListenableFuture<File>();
+        ListenableFuture<File> existing = rendering.putIfAbsent(orderNumber, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.set(render(receipt, variables));
+                } catch (Throwable ex) {
+                    future.setException(ex);
+                } finally {
+                    rendering.remove(orderNumber, future);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            rendering.remove(orderNumber, future);
+            future.setException(ex);
+        }
+        return future;
+    }
+
+    private File render(File receipt, Map<String, Object> variables) throws IOException {
+        long start = System.nanoTime();
+        Context context = new Context();
+        context.setVariables(variables);
+
+        // written aside and renamed, so a re-download never sees half a receipt
+        Path tempFile = Files.createTempFile(spoolDir.toPath(), receipt.getName(), ".tmp", ownerOnly("rw-------"));
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                templateEngine.process(TEMPLATE, context, writer);
+            }
+            Files.move(tempFile, receipt.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        renderCount.increment();
+        renderTimeNanos.add(elapsed);
+        maxRenderTimeNanos.accumulateAndGet(elapsed, Math::max);
+        logger.debug("Rendered {} in {} us", receipt.getName(), elapsed / 1000);
+        return receipt;
+    }
+
+    @Scheduled(fixedDelayString = "${receipt.purgeInterval:3600000}")
+    public void purge() {
+        File[] receipts = spoolDir.listFiles();
+        if (receipts == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        int purged = 0;
+        for (File receipt : receipts) {
+            if (receipt.lastModified() < cutoff && receipt.delete()) {
+                purged++;
+            }
+        }
+        if (purged > 0) {
+            logger.info("Purged {} spooled receipts", purged);
+        }
+    }
+
+    @Override
+    public long getRenderCount() {
+        return renderCount.sum();
+    }
+
+    @Override
+    public long getRenderTimeNanos() {
+        return renderTimeNanos.sum();
+    }
+
+    @Override
+    public long getMaxRenderTimeNanos() {
+        return maxRenderTimeNanos.get();
+    }
+
+    // applied as the file is created, so there is no moment where it is readable by others
+    private static FileAttribute<?>[] ownerOnly(String permissions) {
+        return POSIX
+                ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))}
+                : new FileAttribute<?>[0];
+    }
+
+    private static ListenableFuture<File> failed(Exception ex) {
+        SettableListenableFuture<File> future = new SettableListenableFuture<File>();
+        future.setException(ex);
+        return future;
+    }
+}
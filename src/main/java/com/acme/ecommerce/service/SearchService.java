@@ -0,0 +1,18 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+
+import java.util.List;
+
+public interface SearchService {
+
+    public List<Product> search(String query, int limit);
+
+    public List<String> suggest(String prefix, int limit);
+
+    public void index(Product product);
+
+    public void remove(Long productId);
+
+    public void rebuild();
+}
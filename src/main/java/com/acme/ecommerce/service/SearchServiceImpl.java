@@ -0,0 +1,507 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// In-memory inverted index over product name and description. Products get dense ordinals, each term
+// maps to sorted arrays of ordinals and weights, and queries add up scores in flat arrays instead of maps.
+// Terms are kept sorted, so a typed prefix is a range of the term map. Readers never lock; writes are
+// serialised and replace the posting arrays they touch. Only ids and terms are indexed: the products in
+// the results are loaded through the repository's cached rows, so stock and prices are never stale.
+@Service
+public class SearchServiceImpl implements SearchService {
+
+    final Logger logger = LoggerFactory.getLogger(SearchServiceImpl.class);
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESC_WEIGHT = 1;
+    // a prefix match counts for less than the whole word
+    private static final float PREFIX_FACTOR = 0.5f;
+    // bounds the work for one- or two-letter prefixes
+    private static final int MAX_EXPANSIONS = 64;
+    // searches are CPU-bound, a burst of requests beyond this makes accumulators that are dropped after use
+    static final int MAX_POOLED_ACCUMULATORS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final ProductRepository productRepository;
+
+    private volatile ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<String, Postings>();
+    private volatile ConcurrentMap<Long, Integer> ordinals = new ConcurrentHashMap<Long, Integer>();
+    private volatile Document[] documents = new Document[0];
+    private volatile int documentCount;
+    private volatile boolean built;
+
+    // score arrays sized to the catalog, reused by one query at a time; only a few are kept between searches
+    private final BlockingQueue<Accumulator> accumulators =
+            new ArrayBlockingQueue<Accumulator>(MAX_POOLED_ACCUMULATORS);
+
+    @Autowired
+    public SearchServiceImpl(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // an import rewrites the product table underneath the index
+    @EventListener
+    public void catalogImported(CatalogImportedEvent event) {
+        rebuild();
+    }
+
+    // ordered after the catalog seed: a seeded catalog is indexed by its import event, so this only builds
+    // the index of a table that was already filled
+    @EventListener(ContextRefreshedEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void contextRefreshed() {
+        if (!built) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public synchronized void rebuild() {
+        Map<String, Map<Integer, Integer>> weights = new HashMap<String, Map<Integer, Integer>>();
+        ConcurrentMap<Long, Integer> rebuiltOrdinals = new ConcurrentHashMap<Long, Integer>();
+        List<Document> rebuiltDocuments = new ArrayList<Document>();
+        for (Product product : productRepository.findAll()) {
+            Integer ordinal = rebuiltOrdinals.get(product.getId());
+            if (ordinal == null) {
+                ordinal = rebuiltDocuments.size();
+                rebuiltOrdinals.put(product.getId(), ordinal);
+                rebuiltDocuments.add(null);
+            }
+            Map<String, Integer> productWeights = weigh(product);
+            rebuiltDocuments.set(ordinal, new Document(product.getId(), productWeights.keySet()));
+            for (Map.Entry<String, Integer> weight : productWeights.entrySet()) {
+                weights.computeIfAbsent(weight.getKey(), term -> new HashMap<Integer, Integer>())
+                        .put(ordinal, weight.getValue());
+            }
+        }
+        ConcurrentSkipListMap<String, Postings> rebuiltTerms = new ConcurrentSkipListMap<String, Postings>();
+        for (Map.Entry<String, Map<Integer, Integer>> term : weights.entrySet()) {
+            rebuiltTerms.put(term.getKey(), Postings.of(term.getValue()));
+        }
+
+        documents = rebuiltDocuments.toArray(new Document[rebuiltDocuments.size()]);
+        documentCount = rebuiltOrdinals.size();
+        ordinals = rebuiltOrdinals;
+        terms = rebuiltTerms;
+        built = true;
+        logger.info("Indexed {} products, {} terms", documentCount, rebuiltTerms.size());
+    }
+
+    // a product keeps its ordinal across updates, only the terms that changed get new arrays
+    @Override
+    public synchronized void index(Product product) {
+        Map<String, Integer> weights = weigh(product);
+        Integer ordinal = ordinals.get(product.getId());
+        if (ordinal == null) {
+            ordinal = documents.length;
+        }
+        Document previous = ordinal < documents.length ? documents[ordinal] : null;
+        if (previous != null) {
+            for (String term : previous.terms) {
+                if (!weights.containsKey(term)) {
+                    unpost(term, ordinal);
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            Postings postings = terms.get(weight.getKey());
+            terms.put(weight.getKey(), postings == null
+                    ? Postings.of(Collections.singletonMap(ordinal, weight.getValue()))
+                    : postings.with(ordinal, weight.getValue()));
+        }
+
+        Document document = new Document(product.getId(), weights.keySet());
+        if (ordinal == documents.length) {
+            Document[] grown = Arrays.copyOf(documents, ordinal + 1);
+            grown[ordinal] = document;
+            documents = grown;
+            ordinals.put(product.getId(), ordinal);
+        } else {
+            documents[ordinal] = document;
+        }
+        if (previous == null) {
+            documentCount++;
+        }
+    }
+
+    // the ordinal stays reserved until the next rebuild
+    @Override
+    public synchronized void remove(Long productId) {
+        Integer ordinal = ordinals.get(productId);
+        if (ordinal == null || documents[ordinal] == null) {
+            return;
+        }
+        for (String term : documents[ordinal].terms) {
+            unpost(term, ordinal);
+        }
+        documents[ordinal] = null;
+        documentCount--;
+    }
+
+    private void unpost(String term, int ordinal) {
+        Postings postings = terms.get(term);
+        if (postings == null) {
+            return;
+        }
+        Postings remaining = postings.without(ordinal);
+        if (remaining.size() == 0) {
+            terms.remove(term);
+        } else {
+            terms.put(term, remaining);
+        }
+    }
+
+    // Every word has to match: the last one as a prefix too, for typeahead. Ranked by weight times inverse
+    // document frequency. Words are applied rarest first, so later ones only narrow a small candidate set.
+    @Override
+    public List<Product> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        Document[] snapshot = documents;
+        int total = Math.max(1, documentCount);
+        List<Match> matches = new ArrayList<Match>(words.size());
+        for (int i = 0; i < words.size(); i++) {
+            Match match = match(words.get(i), i == words.size() - 1, total);
+            if (match.postingCount == 0) {
+                return Collections.emptyList();
+            }
+            matches.add(match);
+        }
+        matches.sort((a, b) -> Integer.compare(a.postingCount, b.postingCount));
+
+        long[] ids;
+        Accumulator accumulator = acquire(snapshot.length);
+        try {
+            for (int i = 0; i < matches.size() && (i == 0 || accumulator.touchedCount > 0); i++) {
+                accumulator.add(matches.get(i), i);
+            }
+            ids = accumulator.top(snapshot, limit);
+        } finally {
+            accumulator.clear();
+            // dropped for the garbage collector when the pool is already full
+            accumulators.offer(accumulator);
+        }
+        // one lookup per result in the Product region; a product deleted since it was indexed is left out
+        List<Product> products = new ArrayList<Product>(ids.length);
+        for (long id : ids) {
+            Product product = productRepository.findOne(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    // completions of the last word typed, most common first among the expansions, with the words before it kept
+    @Override
+    public List<String> suggest(String prefix, int limit) {
+        List<String> words = tokenize(prefix);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String last = words.get(words.size() - 1);
+        StringBuilder lead = new StringBuilder();
+        for (String word : words.subList(0, words.size() - 1)) {
+            lead.append(word).append(' ');
+        }
+
+        List<Map.Entry<String, Postings>> expansions = new ArrayList<Map.Entry<String, Postings>>();
+        for (Map.Entry<String, Postings> expansion : expand(last).entrySet()) {
+            expansions.add(expansion);
+            if (expansions.size() == MAX_EXPANSIONS) {
+                break;
+            }
+        }
+        expansions.sort((a, b) -> {
+            int byFrequency = Integer.compare(b.getValue().size(), a.getValue().size());
+            return byFrequency != 0 ? byFrequency : a.getKey().compareTo(b.getKey());
+        });
+        List<String> suggestions = new ArrayList<String>(Math.min(limit, expansions.size()));
+        for (Map.Entry<String, Postings> expansion : expansions) {
+            suggestions.add(lead + expansion.getKey());
+            if (suggestions.size() == limit) {
+                break;
+            }
+        }
+        return suggestions;
+    }
+
+    // the whole word first (it sorts before its extensions), then up to MAX_EXPANSIONS longer words
+    private Match match(String word, boolean prefix, int total) {
+        List<Postings> postings = new ArrayList<Postings>();
+        List<Float> factors = new ArrayList<Float>();
+        if (prefix) {
+            for (Map.Entry<String, Postings> expansion : expand(word).entrySet()) {
+                postings.add(expansion.getValue());
+                factors.add(idf(expansion.getValue(), total) * (expansion.getKey().equals(word) ? 1 : PREFIX_FACTOR));
+                if (postings.size() == MAX_EXPANSIONS) {
+                    break;
+                }
+            }
+        } else {
+            Postings exact = terms.get(word);
+            if (exact != null) {
+                postings.add(exact);
+                factors.add(idf(exact, total));
+            }
+        }
+        return new Match(postings, factors);
+    }
+
+    private NavigableMap<String, Postings> expand(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static float idf(Postings postings, int total) {
+        return (float) Math.log(1 + (double) total / Math.max(1, postings.size()));
+    }
+
+    int pooledAccumulators() {
+        return accumulators.size();
+    }
+
+    private Accumulator acquire(int capacity) {
+        Accumulator accumulator = accumulators.poll();
+        // sized for the catalog when it was made, new products since need a bigger one
+        if (accumulator == null || accumulator.capacity() < capacity) {
+            accumulator = new Accumulator(capacity);
+        }
+        return accumulator;
+    }
+
+    private static Map<String, Integer> weigh(Product product) {
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        for (String term : tokenize(product.getName())) {
+            weights.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(product.getDesc())) {
+            weights.merge(term, DESC_WEIGHT, Integer::sum);
+        }
+        return weights;
+    }
+
+    // lower-cased runs of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<String>();
+        if (text == null) {
+            return terms;
+        }
+        for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static final class Document {
+
+        private final long productId;
+        private final String[] terms;
+
+        private Document(long productId, Set<String> terms) {
+            this.productId = productId;
+            this.terms = terms.toArray(new String[terms.size()]);
+        }
+    }
+
+    // ordinals ascending with their weights; never changed once published
+    private static final class Postings {
+
+        private final int[] ordinals;
+        private final int[] weights;
+
+        private Postings(int[] ordinals, int[] weights) {
+            this.ordinals = ordinals;
+            this.weights = weights;
+        }
+
+        private static Postings of(Map<Integer, Integer> weights) {
+            int[] ordinals = new int[weights.size()];
+            int i = 0;
+            for (Integer ordinal : weights.keySet()) {
+                ordinals[i++] = ordinal;
+            }
+            Arrays.sort(ordinals);
+            int[] sortedWeights = new int[ordinals.length];
+            for (i = 0; i < ordinals.length; i++) {
+                sortedWeights[i] = weights.get(ordinals[i]);
+            }
+            return new Postings(ordinals, sortedWeights);
+        }
+
+        private int size() {
+            return ordinals.length;
+        }
+
+        private Postings with(int ordinal, int weight) {
+            int position = Arrays.binarySearch(ordinals, ordinal);
+            if (position >= 0) {
+                int[] changedWeights = weights.clone();
+                changedWeights[position] = weight;
+                return new Postings(ordinals, changedWeights);
+            }
+            int insert = -position - 1;
+            int[] grownOrdinals = new int[ordinals.length + 1];
+            int[] grownWeights = new int[ordinals.length + 1];
+            System.arraycopy(ordinals, 0, grownOrdinals, 0, insert);
+            System.arraycopy(weights, 0, grownWeights, 0, insert);
+            grownOrdinals[insert] = ordinal;
+            grownWeights[insert] = weight;
+            System.arraycopy(ordinals, insert, grownOrdinals, insert + 1, ordinals.length - insert);
+            System.arraycopy(weights, insert, grownWeights, insert + 1, ordinals.length - insert);
+            return new Postings(grownOrdinals, grownWeights);
+        }
+
+        private Postings without(int ordinal) {
+            int position = Arrays.binarySearch(ordinals, ordinal);
+            if (position < 0) {
+                return this;
+            }
+            int[] shrunkOrdinals = new int[ordinals.length - 1];
+            int[] shrunkWeights = new int[ordinals.length - 1];
+            System.arraycopy(ordinals, 0, shrunkOrdinals, 0, position);
+            System.arraycopy(weights, 0, shrunkWeights, 0, position);
+            System.arraycopy(ordinals, position + 1, shrunkOrdinals, position, ordinals.length - position - 1);
+            System.arraycopy(weights, position + 1, shrunkWeights, position, ordinals.length - position - 1);
+            return new Postings(shrunkOrdinals, shrunkWeights);
+        }
+    }
+
+    // one query word: the posting lists it matches and what a hit in each is worth
+    private static final class Match {
+
+        private final Postings[] postings;
+        private final float[] factors;
+        private final int postingCount;
+
+        private Match(List<Postings> postings, List<Float> factors) {
+            this.postings = postings.toArray(new Postings[postings.size()]);
+            this.factors = new float[factors.size()];
+            int count = 0;
+            for (int i = 0; i < this.postings.length; i++) {
+                this.factors[i] = factors.get(i);
+                count += this.postings[i].size();
+            }
+            this.postingCount = count;
+        }
+    }
+
+    // Per-ordinal scores for one query. Only the touched ordinals are reset afterwards, so reuse costs
+    // nothing like the catalog size.
+    private static final class Accumulator {
+
+        private final float[] scores;
+        private final float[] best;
+        private final int[] matched;
+        private final int[] touched;
+        private int touchedCount;
+
+        private Accumulator(int capacity) {
+            scores = new float[capacity];
+            best = new float[capacity];
+            matched = new int[capacity];
+            touched = new int[capacity];
+        }
+
+        private int capacity() {
+            return scores.length;
+        }
+
+        // the first word collects candidates, each later one keeps only those it hits as well;
+        // a product hit by several expansions of a word counts its best one
+        private void add(Match match, int word) {
+            for (int p = 0; p < match.postings.length; p++) {
+                int[] ordinals = match.postings[p].ordinals;
+                int[] weights = match.postings[p].weights;
+                float factor = match.factors[p];
+                for (int i = 0; i < ordinals.length; i++) {
+                    int ordinal = ordinals[i];
+                    if (ordinal >= matched.length || matched[ordinal] != word) {
+                        continue;
+                    }
+                    if (word == 0 && best[ordinal] == 0) {
+                        touched[touchedCount++] = ordinal;
+                    }
+                    best[ordinal] = Math.max(best[ordinal], weights[i] * factor);
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int ordinal = touched[i];
+                if (best[ordinal] > 0) {
+                    scores[ordinal] += best[ordinal];
+                    best[ordinal] = 0;
+                    matched[ordinal] = word + 1;
+                    touched[kept++] = ordinal;
+                } else {
+                    scores[ordinal] = 0;
+                    matched[ordinal] = 0;
+                }
+            }
+            touchedCount = kept;
+        }
+
+        // best first, ties by ordinal; a bounded heap, so only the top ever gets ordered
+        private long[] top(Document[] documents, int limit) {
+            PriorityQueue<Integer> heap = new PriorityQueue<Integer>(limit + 1, (a, b) -> {
+                int byScore = Float.compare(scores[a], scores[b]);
+                return byScore != 0 ? byScore : Integer.compare(b, a);
+            });
+            for (int i = 0; i < touchedCount; i++) {
+                int ordinal = touched[i];
+                if (ordinal >= documents.length || documents[ordinal] == null) {
+                    continue;
+                }
+                if (heap.size() < limit) {
+                    heap.add(ordinal);
+                } else if (scores[ordinal] > scores[heap.peek()]
+                        || (scores[ordinal] == scores[heap.peek()] && ordinal < heap.peek())) {
+                    heap.poll();
+                    heap.add(ordinal);
+                }
+            }
+            long[] results = new long[heap.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                results[i] = documents[heap.poll()].productId;
+            }
+            return results;
+        }
+
+        private void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                int ordinal = touched[i];
+                scores[ordinal] = 0;
+                best[ordinal] = 0;
+                matched[ordinal] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.Thumbnail;
+import org.springframework.util.concurrent.ListenableFuture;
+
+public interface ThumbnailService {
+
+    public ListenableFuture<Thumbnail> findThumbnail(Product product);
+
+    public String fingerprint(Product product);
+}
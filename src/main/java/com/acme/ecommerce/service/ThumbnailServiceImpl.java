@@ -0,0 +1,154 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductImage;
+import com.acme.ecommerce.domain.Thumbnail;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+
+@Service("thumbnailService")
+public class ThumbnailServiceImpl implements ThumbnailService {
+
+    final Logger logger = LoggerFactory.getLogger(ThumbnailServiceImpl.class);
+
+    private static final String CONTENT_TYPE = "image/jpeg";
+
+    private final ImageService imageService;
+    private final AsyncListenableTaskExecutor executor;
+    private final int size;
+    private final File cacheDir;
+
+    // LRU bounded by the total size of the thumbnails it holds
+    private final Cache<String, Thumbnail> thumbnails;
+
+    @Autowired
+    public ThumbnailServiceImpl(ImageService imageService,
+                                @Qualifier("thumbnailExecutor") AsyncListenableTaskExecutor executor,
+                                @Value("${thumbnail.size:240}") int size,
+                                @Value("${thumbnail.cacheDir:}") String cacheDir,
+                                @Value("${thumbnail.cache.maxBytes:16777216}") long maxBytes) {
+        this.imageService = imageService;
+        this.executor = executor;
+        this.size = size;
+        this.cacheDir = cacheDir.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "ecommerce-thumbnails") : new File(cacheDir);
+        if (!this.cacheDir.isDirectory() && !this.cacheDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create thumbnail cache directory " + this.cacheDir);
+        }
+        this.thumbnails = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, Thumbnail>weigher((fingerprint, thumbnail) -> thumbnail.getContent().length)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public ListenableFuture<Thumbnail> findThumbnail(Product product) {
+        final String fingerprint;
+        final ProductImage source;
+        try {
+            source = imageService.findThumbImage(product);
+            fingerprint = fingerprint(source);
+        } catch (FileNotFoundException ex) {
+            return failed(ex);
+        }
+
+        Thumbnail thumbnail = thumbnails.getIfPresent(fingerprint);
+        if (thumbnail != null) {
+            return new AsyncResult<Thumbnail>(thumbnail);
+        }
+        try {
+            return executor.submitListenable(() -> {
+                try {
+                    return thumbnails.get(fingerprint, () -> loadOrCreate(source, fingerprint));
+                } catch (ExecutionException ex) {
+                    throw (Exception) ex.getCause();
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            return failed(ex);
+        }
+    }
+
+    // used by the templates to build cache-busting thumbnail URLs
+    @Override
+    public String fingerprint(Product product) {
+        try {
+            return fingerprint(imageService.findThumbImage(product));
+        } catch (FileNotFoundException ex) {
+            logger.warn("No thumbnail image for product {}: {}", product.getId(), ex.getMessage());
+            return "";
+        }
+    }
+
+    // derived from the source image, so a changed image or thumbnail size never hits a stale disk entry
+    private String fingerprint(ProductImage source) {
+        return source.getFingerprint() + "-" + size;
+    }
+
+    private Thumbnail loadOrCreate(ProductImage source, String fingerprint) throws IOException {
+        File thumbnailFile = new File(cacheDir, fingerprint + ".jpg");
+        if (!thumbnailFile.isFile()) {
+            logger.debug("Creating thumbnail {} from {}", thumbnailFile, source.getFile());
+            create(source.getFile(), thumbnailFile);
+        }
+        return new Thumbnail(Files.readAllBytes(thumbnailFile.toPath()), CONTENT_TYPE, fingerprint);
+    }
+
+    private void create(File sourceFile, File thumbnailFile) throws IOException {
+        BufferedImage original = ImageIO.read(sourceFile);
+        if (original == null) {
+            throw new IOException("Unsupported image format: " + sourceFile);
+        }
+        double scale = Math.min(1d, (double) size / Math.max(original.getWidth(), original.getHeight()));
+        int width = Math.max(1, (int) Math.round(original.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(original.getHeight() * scale));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(original, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        // write aside and rename, so concurrent readers never see a partial file
+        File tempFile = File.createTempFile(thumbnailFile.getName(), ".tmp", cacheDir);
+        try {
+            ImageIO.write(scaled, "jpg", tempFile);
+            Files.move(tempFile.toPath(), thumbnailFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static ListenableFuture<Thumbnail> failed(Exception ex) {
+        SettableListenableFuture<Thumbnail> future = new SettableListenableFuture<Thumbnail>();
+        future.setException(ex);
+        return future;
+    }
+}
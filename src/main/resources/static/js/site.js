@@ -16,4 +16,18 @@ $(function() {
     		$("#billingPhone").val($("#shippingPhone").val());
     	}
     });
-});
\ No newline at end of file
+
+    // typeahead: completions for what has been typed so far, fetched once typing pauses
+    var suggestTimer;
+    $("#search").on("input", function(){
+        var query = $(this).val();
+        clearTimeout(suggestTimer);
+        suggestTimer = setTimeout(function(){
+            $.getJSON("/product/suggest", {q: query}, function(suggestions){
+                $("#search-suggestions").empty().append($.map(suggestions, function(suggestion){
+                    return $("<option>").attr("value", suggestion);
+                }));
+            });
+        }, 150);
+    });
+});
@@ -0,0 +1,277 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.config.PersistenceConfig;
+import com.acme.ecommerce.domain.ImportResult;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.service.CatalogExportServiceImpl;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import com.acme.ecommerce.service.CatalogImportServiceImpl;
+import com.acme.ecommerce.service.CatalogImportedEvent;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {PersistenceConfig.class})
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup("/it-products.xml")
+public class TestCatalogImportIT {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ProductRepository repository;
+
+    private ThreadPoolTaskExecutor executor;
+    private final List<Object> events = new ArrayList<Object>();
+    private CatalogImportServiceImpl importer;
+    private CatalogExportServiceImpl exporter;
+    private JdbcTemplate jdbcTemplate;
+    private long nextId;
+
+    @Before
+    public void setup() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.initialize();
+        ApplicationEventPublisher publisher = new ApplicationEventPublisher() {
+            @Override
+            public void publishEvent(ApplicationEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void publishEvent(Object event) {
+                events.add(event);
+            }
+        };
+        // batches of two, so a small feed still goes through several writers
+        importer = new CatalogImportServiceImpl(dataSource, transactionManager, executor, publisher, 2, 2, "");
+        exporter = new CatalogExportServiceImpl(repository);
+        ReflectionTestUtils.setField(exporter, "entityManager",
+                SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory));
+        entityManagerFactory.getCache().evictAll();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        nextId = jdbcTemplate.queryForObject("select s.current_value + 1 from information_schema.sequences s "
+                + "join information_schema.columns c on c.sequence_name = s.sequence_name "
+                + "where c.table_name = 'PRODUCT' and c.column_name = 'PRODUCT_ID'", Long.class);
+    }
+
+    // the explicit ids move product's identity column on, other ITs sharing the database expect it left alone
+    @After
+    public void shutdown() {
+        executor.shutdown();
+        jdbcTemplate.execute("alter table product alter column product_id restart with " + nextId);
+    }
+
+    @Test
+    public void importCsv_ShouldInsertNewAndUpdateExistingProducts() throws Exception {
+        ImportResult result = importer.importFeed(feed(
+                "product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                        + "1,Item 1,\"Renamed, with a \"\"quote\"\"\",Thumb Image 1,Full Image 1,9.99,50\n"
+                        + "100,Item 100,Item 100 Description,t100.jpg,f100.jpg,10.00,1\n"
+                        + "101,Item 101,Item 101 Description,t101.jpg,f101.jpg,10.10,2\n"), Format.CSV);
+
+        assertThat(result.getRowsWritten()).isEqualTo(3);
+        assertThat(result.getRowsRejected()).isEqualTo(0);
+        Product updated = repository.findOne(1L);
+        assertThat(updated.getDesc()).isEqualTo("Renamed, with a \"quote\"");
+        assertThat(updated.getPrice()).isEqualByComparingTo(new BigDecimal("9.99"));
+        assertThat(updated.getQuantity()).isEqualTo(50);
+        assertThat(repository.findOne(101L).getName()).isEqualTo("Item 101");
+        assertThat(events).hasSize(1);
+        assertThat(((CatalogImportedEvent) events.get(0)).getResult().getRowsWritten()).isEqualTo(3);
+    }
+
+    @Test
+    public void importCsv_ShouldMatchColumnsByHeaderAndRejectBadRows() throws Exception {
+        ImportResult result = importer.importFeed(feed(
+                "quantity,price,product_id,name,desc,thumb_image_name,full_image_name,supplier\n"
+                        + "3,1.50,200,Item 200,Desc,t.jpg,f.jpg,acme\n"
+                        + "3,not a price,201,Item 201,Desc,t.jpg,f.jpg,acme\n"
+                        + "\n"
+                        + "-1,1.50,202,Item 202,Desc,t.jpg,f.jpg,acme\n"
+                        + "3,1.50,203,,Desc,t.jpg,f.jpg,acme\n"), Format.CSV);
+
+        assertThat(result.getRowsWritten()).isEqualTo(1);
+        assertThat(result.getRowsRejected()).isEqualTo(3);
+        assertThat(repository.findOne(200L).getPrice()).isEqualByComparingTo(new BigDecimal("1.50"));
+        assertThat(repository.findOne(201L)).isNull();
+    }
+
+    @Test
+    public void importNdjson_ShouldWriteEachLine() throws Exception {
+        ImportResult result = importer.importFeed(feed(
+                "{\"product_id\":300,\"name\":\"Item 300\",\"desc\":\"Desc\",\"thumb_image_name\":\"t.jpg\","
+                        + "\"full_image_name\":\"f.jpg\",\"price\":19.95,\"quantity\":4}\n"
+                        + "{\"product_id\":301,\"name\":\"Item 301\"}\n"
+                        + "not json\n"), Format.NDJSON);
+
+        assertThat(result.getRowsWritten()).isEqualTo(1);
+        assertThat(result.getRowsRejected()).isEqualTo(2);
+        assertThat(repository.findOne(300L).getPrice()).isEqualByComparingTo(new BigDecimal("19.95"));
+        assertThat(importer.getProgress().isRunning()).isFalse();
+        assertThat(importer.getProgress().getRowsRead()).isEqualTo(3);
+    }
+
+    @Test
+    public void importCsv_ShouldKeepTheLastRowForAnId() throws Exception {
+        ImportResult result = importer.importFeed(feed(
+                "product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                        + "500,First,Desc,t.jpg,f.jpg,1.00,1\n"
+                        + "500,Second,Desc,t.jpg,f.jpg,2.00,2\n"
+                        + "502,Item 502,Desc,t.jpg,f.jpg,5.02,1\n"
+                        + "501,Item 501,Desc,t.jpg,f.jpg,5.01,1\n"
+                        + "\"500\",\"Third, quoted\",Desc,t.jpg,f.jpg,3.00,3\n"
+                        + "504,Item 504,Desc,t.jpg,f.jpg,5.04,1\n"
+                        + "506,Item 506,Desc,t.jpg,f.jpg,5.06,1\n"
+                        + "500,Last,Desc,t.jpg,f.jpg,4.00,4\n"), Format.CSV);
+
+        assertThat(result.getRowsRead()).isEqualTo(8);
+        assertThat(result.getRowsRejected()).isEqualTo(0);
+        Product product = repository.findOne(500L);
+        assertThat(product.getName()).isEqualTo("Last");
+        assertThat(product.getQuantity()).isEqualTo(4);
+    }
+
+    @Test
+    public void importNdjson_ShouldKeepTheLastRowForAnId() throws Exception {
+        ImportResult result = importer.importFeed(feed(
+                "{\"product_id\":600,\"name\":\"First\",\"desc\":\"Desc\",\"thumb_image_name\":\"t.jpg\","
+                        + "\"full_image_name\":\"f.jpg\",\"price\":1.00,\"quantity\":1}\n"
+                        + "{\"name\":\"Last\",\"desc\":{\"product_id\":1},\"product_id\":600}\n"
+                        + "{\"name\":\"Last\",\"desc\":\"Desc\",\"thumb_image_name\":\"t.jpg\","
+                        + "\"full_image_name\":\"f.jpg\",\"price\":2.00,\"quantity\":2,\"product_id\":600}\n"),
+                Format.NDJSON);
+
+        // the middle row, rejected, is replaced by the last one before it is written
+        assertThat(result.getRowsWritten()).isEqualTo(1);
+        assertThat(result.getRowsRejected()).isEqualTo(0);
+        assertThat(repository.findOne(600L).getName()).isEqualTo("Last");
+        assertThat(repository.findOne(600L).getPrice()).isEqualByComparingTo(new BigDecimal("2.00"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void importCsv_ShouldFailWithoutRequiredColumn() throws Exception {
+        importer.importFeed(feed("product_id,name\n1,Item 1\n"), Format.CSV);
+    }
+
+    @Test
+    public void exportCsv_ShouldWriteEveryProductInIdOrder() throws Exception {
+        importer.importFeed(feed("product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                + "2,Item 2,\"Big, \"\"shiny\"\"\",Thumb Image 2,Full Image 2,2.22,5\n"), Format.CSV);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = export(out, Format.CSV);
+
+        assertThat(count).isEqualTo(4);
+        assertThat(out.toString("UTF-8")).isEqualTo(
+                "product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                        + "1,Item 1,Item 1 Description,Thumb Image 1,Full Image 1,1.11,5\n"
+                        + "2,Item 2,\"Big, \"\"shiny\"\"\",Thumb Image 2,Full Image 2,2.22,5\n"
+                        + "3,Item 3,Item 3 Description,Thumb Image 3,Full Image 3,3.33,5\n"
+                        + "4,Item 4,Item 4 Description,Thumb Image 4,Full Image 4,4.44,5\n");
+    }
+
+    @Test
+    public void exportCsv_ShouldReadBackThroughTheImport() throws Exception {
+        importer.importFeed(feed("product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                + "2,Item 2,\"Two lines,\nthe second \"\"quoted\"\"\",Thumb Image 2,Full Image 2,2.22,5\n"
+                + "3,Item 3,\"Line\n\nbreaks\",Thumb Image 3,Full Image 3,3.33,5\n"), Format.CSV);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export(out, Format.CSV);
+        jdbcTemplate.update("update product set desc = 'changed'");
+
+        ImportResult result = importer.importFeed(new ByteArrayInputStream(out.toByteArray()), Format.CSV);
+
+        assertThat(result.getRowsWritten()).isEqualTo(4);
+        assertThat(result.getRowsRejected()).isEqualTo(0);
+        entityManagerFactory.getCache().evictAll();
+        assertThat(repository.findOne(1L).getDesc()).isEqualTo("Item 1 Description");
+        assertThat(repository.findOne(2L).getDesc()).isEqualTo("Two lines,\nthe second \"quoted\"");
+        assertThat(repository.findOne(3L).getDesc()).isEqualTo("Line\n\nbreaks");
+        assertThat(repository.findOne(4L).getDesc()).isEqualTo("Item 4 Description");
+    }
+
+    @Test
+    public void importCsv_ShouldRejectAnUnterminatedQuoteOnly() throws Exception {
+        ImportResult result = importer.importFeed(feed(
+                "product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                        + "400,Item 400,\"Never closed,t.jpg,f.jpg,1.00,1\n"
+                        + "401,Item 401,Desc,t.jpg,f.jpg,1.00,1\n"), Format.CSV);
+
+        // the open quote runs to the end of the feed, taking the next line with it
+        assertThat(result.getRowsWritten()).isEqualTo(0);
+        assertThat(result.getRowsRejected()).isEqualTo(1);
+        assertThat(repository.findOne(400L)).isNull();
+    }
+
+    @Test
+    public void exportNdjson_ShouldReadBackThroughTheImport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export(out, Format.NDJSON);
+
+        assertThat(out.toString("UTF-8")).startsWith("{\"product_id\":1,\"name\":\"Item 1\","
+                + "\"desc\":\"Item 1 Description\",\"thumb_image_name\":\"Thumb Image 1\","
+                + "\"full_image_name\":\"Full Image 1\",\"price\":1.11,\"quantity\":5}\n");
+        ImportResult result = importer.importFeed(new ByteArrayInputStream(out.toByteArray()), Format.NDJSON);
+        assertThat(result.getRowsWritten()).isEqualTo(4);
+        assertThat(result.getRowsRejected()).isEqualTo(0);
+    }
+
+    // the service's transaction, which the cursor needs, without a proxy around it
+    private long export(ByteArrayOutputStream out, Format format) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return exporter.export(out, format);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private static InputStream feed(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,59 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.config.PersistenceConfig;
+import com.acme.ecommerce.domain.Coupon;
+import com.acme.ecommerce.repository.CouponRepository;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {PersistenceConfig.class})
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup("/it-coupons.xml")
+public class TestCouponIT {
+
+    @Autowired
+    private CouponRepository repository;
+
+    @Test
+    public void findByCode_ShouldReturnCoupon() {
+        Coupon coupon = repository.findByCode("FORK20");
+
+        assertThat(coupon.getProductId()).isEqualTo(2L);
+        assertThat(coupon.getDiscountType()).isEqualTo(Coupon.DiscountType.PERCENT);
+    }
+
+    @Test
+    public void findByUpdatedAt_ShouldReturnChangesSinceWatermarkInclusive() {
+        List<Coupon> changed = repository.findByUpdatedAtGreaterThanEqual(Timestamp.valueOf("2016-02-01 10:00:00"));
+
+        assertThat(changed).extracting("code").containsOnly("FORK20", "FROGS3");
+    }
+
+    @Test
+    public void save_ShouldStampUpdatedAt() {
+        Coupon coupon = repository.findByCode("FROGS3");
+        coupon.setActive(true);
+        coupon.setDiscount(new BigDecimal("4.00"));
+
+        Coupon saved = repository.save(coupon);
+
+        assertThat(saved.getUpdatedAt()).isAfter(Timestamp.valueOf("2016-03-01 10:00:00"));
+    }
+}
@@ -7,16 +7,25 @@ import com.github.springtestdbunit.DbUnitTestExecutionListener;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
 import com.github.springtestdbunit.annotation.ExpectedDatabase;
 import com.github.springtestdbunit.assertion.DatabaseAssertionMode;
+import com.github.springtestdbunit.dataset.ReplacementDataSetModifier;
+import org.dbunit.dataset.ReplacementDataSet;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
 
+import javax.persistence.EntityManagerFactory;
 import java.math.BigDecimal;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
  
@@ -30,6 +39,25 @@ public class TestProductIT {
  
     @Autowired
     private ProductRepository repository;
+
+    // the id comes from a sequence other tests draw on too, the expected row takes whatever the save got
+    private Long savedId;
+
+    private class SavedId extends ReplacementDataSetModifier {
+        @Override
+        protected void addReplacements(ReplacementDataSet dataSet) {
+            dataSet.addReplacementObject("[SAVED_ID]", savedId);
+        }
+    }
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    // the dataset is reloaded behind Hibernate's back before every test
+    @Before
+    public void evictCaches() {
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+    }
      
     @Test
     public void findAll_ShouldReturnFourProductEntry() {
@@ -45,7 +73,7 @@ public class TestProductIT {
     }
     
     @Test
-    @ExpectedDatabase(value="/save-product.xml", assertionMode=DatabaseAssertionMode.NON_STRICT)
+    @ExpectedDatabase(value="/save-product.xml", assertionMode=DatabaseAssertionMode.NON_STRICT, modifiers=SavedId.class)
     public void saveOne_ShouldAddAfterInitialRows() {
     	Product newProduct = new Product();
     	
@@ -59,5 +87,73 @@ public class TestProductIT {
     	Product savedProduct = repository.save(newProduct);
     	
     	assertThat(savedProduct.getId()).isNotNull();
+    	savedId = savedProduct.getId();
+    }
+
+    @Test
+    public void findOne_ShouldComeFromSecondLevelCacheOnceLoaded() {
+        Statistics statistics = statistics();
+        repository.findOne(2L);
+        statistics.clear();
+
+        Product product = repository.findOne(2L);
+
+        assertThat(product.getName()).isEqualTo("Item 2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void findAllPage_ShouldComeFromQueryCacheOnceLoaded() {
+        Statistics statistics = statistics();
+        repository.findAll(new PageRequest(0, 3));
+        statistics.clear();
+
+        Page<Product> page = repository.findAll(new PageRequest(0, 3));
+
+        assertThat(page.getContent()).extracting("name").containsExactly("Item 1", "Item 2", "Item 3");
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void save_ShouldInvalidateCachedPages() {
+        repository.findAll(new PageRequest(0, 10));
+        Product product = repository.findOne(4L);
+        product.setQuantity(2);
+        repository.save(product);
+
+        Page<Product> page = repository.findAll(new PageRequest(0, 10));
+
+        assertThat(page.getContent()).extracting("quantity").containsExactly(5, 5, 5, 2);
+    }
+
+    @Test
+    public void findAfter_ShouldSeekPastTheCursor() {
+        List<Product> products = repository.findAfter(2L, new PageRequest(0, 5));
+
+        assertThat(products).extracting("name").containsExactly("Item 3", "Item 4");
+    }
+
+    @Test
+    public void findBefore_ShouldReturnTheClosestFirst() {
+        List<Product> products = repository.findBefore(4L, new PageRequest(0, 2));
+
+        assertThat(products).extracting("name").containsExactly("Item 3", "Item 2");
+    }
+
+    @Test
+    public void countCached_ShouldComeFromQueryCacheOnceLoaded() {
+        Statistics statistics = statistics();
+        repository.countCached();
+        statistics.clear();
+
+        assertThat(repository.countCached()).isEqualTo(4);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
     }
-}
\ No newline at end of file
+}
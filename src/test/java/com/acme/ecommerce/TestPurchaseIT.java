@@ -1,13 +1,22 @@
 package com.acme.ecommerce;
 
 import com.acme.ecommerce.config.PersistenceConfig;
+import com.acme.ecommerce.domain.Address;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
 import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.ProductPurchaseRepository;
+import com.acme.ecommerce.repository.ProductRepository;
 import com.acme.ecommerce.repository.PurchaseRepository;
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
 import com.github.springtestdbunit.annotation.ExpectedDatabase;
 import com.github.springtestdbunit.assertion.DatabaseAssertionMode;
+import com.github.springtestdbunit.dataset.ReplacementDataSetModifier;
+import org.dbunit.dataset.ReplacementDataSet;
 import org.hibernate.LazyInitializationException;
+import org.hibernate.jpa.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +26,11 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
@@ -30,6 +44,25 @@ public class TestPurchaseIT {
  
     @Autowired
     private PurchaseRepository repository;
+
+    // ids come from a pooled sequence, the expected row takes whatever id the save got
+    private Long savedId;
+
+    private class SavedId extends ReplacementDataSetModifier {
+        @Override
+        protected void addReplacements(ReplacementDataSet dataSet) {
+            dataSet.addReplacementObject("[SAVED_ID]", savedId);
+        }
+    }
+
+    @Autowired
+    private ProductPurchaseRepository productPurchaseRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
     
     @Test
     public void findAll_ShouldReturnThreePurchaseEntry() {
@@ -52,7 +85,7 @@ public class TestPurchaseIT {
     }
     
     @Test
-    @ExpectedDatabase(value="/save-purchase.xml", assertionMode=DatabaseAssertionMode.NON_STRICT)
+    @ExpectedDatabase(value="/save-purchase.xml", assertionMode=DatabaseAssertionMode.NON_STRICT, modifiers=SavedId.class)
     public void saveOne_ShouldAddAfterInitialRows() {
     	Purchase newPurchase = new Purchase();
     	    	
@@ -67,5 +100,112 @@ public class TestPurchaseIT {
     	Purchase savedPurchase = repository.save(newPurchase);
     	
     	assertThat(savedPurchase.getId()).isNotNull();
+    	savedId = savedPurchase.getId();
+    }
+
+    @Test
+    public void findCartIds_ShouldSkipPlacedOrders() {
+        List<Long> cartIds = repository.findCartIds(Arrays.asList(1L, 2L, 3L));
+        assertThat(cartIds).containsOnly(1L, 3L);
+    }
+
+    @Test
+    public void deleteByIds_ShouldRemovePurchasesAndLinesInBulk() {
+        assertThat(productPurchaseRepository.deleteByPurchaseIds(Arrays.asList(2L))).isEqualTo(2);
+        assertThat(repository.deleteByIds(Arrays.asList(1L, 2L))).isEqualTo(2);
+        assertThat(repository.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void findWithLines_ShouldLoadLinesProductsAndAddressesInOneSelect() {
+        Statistics statistics = statistics();
+        statistics.clear();
+        Purchase purchase = repository.findWithLines(2L);
+        long statements = statistics.getPrepareStatementCount();
+
+        assertThat(statements).isEqualTo(1);
+        // all of it usable after the session is gone
+        assertThat(purchase.getProductPurchases()).extracting("product.name").containsOnly("Item 2", "Item 3");
+        assertThat(purchase.getShippingAddress().getCity()).isEqualTo("city 1");
+        assertThat(purchase.getBillingAddress().getCity()).isEqualTo("city 2");
+    }
+
+    @Test
+    public void findOrderWithLines_ShouldFindPlacedOrder() {
+        Purchase purchase = repository.findOrderWithLines("123456");
+
+        assertThat(purchase.getId()).isEqualTo(2L);
+        assertThat(purchase.getProductPurchases()).hasSize(2);
+    }
+
+    @Test
+    public void findMaxOrderId_ShouldSkipOrdersWithoutOne() {
+        assertThat(repository.findMaxOrderId()).isNull();
+
+        Purchase legacy = new Purchase();
+        legacy.setOrderNumber("LEGACY-7");
+        repository.save(legacy);
+        for (long orderId : new long[]{99999L, 100000L, 5L}) {
+            Purchase purchase = new Purchase();
+            purchase.setOrderId(orderId);
+            purchase.setOrderNumber(Long.toString(orderId));
+            repository.save(purchase);
+        }
+
+        // the fixture's order 123456 and the legacy number carry no id
+        assertThat(repository.findMaxOrderId()).isEqualTo(100000L);
+    }
+
+    // a placed order with 20 lines and both addresses, written the way CartStoreService writes it
+    @Test
+    public void saveCheckout_ShouldBatchInserts() {
+        Statistics statistics = statistics();
+        List<Product> products = new ArrayList<Product>();
+        productRepository.findAll().forEach(products::add);
+
+        Purchase warmUp = checkout(products, 20);
+        repository.save(warmUp);
+
+        statistics.clear();
+        repository.save(checkout(products, 20));
+        long statements = statistics.getPrepareStatementCount();
+
+        // 23 rows: with batching and pooled ids a handful of statements, one per row without
+        assertThat(statements).isLessThanOrEqualTo(5);
+    }
+
+    private Purchase checkout(List<Product> products, int lines) {
+        Purchase purchase = new Purchase();
+        purchase.setCreditCardNumber("9876543210654321");
+        purchase.setOrderNumber(Long.toString(System.nanoTime()));
+        purchase.setShippingAddress(address("Shipping"));
+        purchase.setBillingAddress(address("Billing"));
+        purchase.setBillingAddressSame(false);
+        for (int i = 0; i < lines; i++) {
+            ProductPurchase productPurchase = new ProductPurchase();
+            productPurchase.setProduct(products.get(i % products.size()));
+            productPurchase.setQuantity(1);
+            productPurchase.setPurchase(purchase);
+            purchase.getProductPurchases().add(productPurchase);
+        }
+        return purchase;
+    }
+
+    private Address address(String name) {
+        Address address = new Address();
+        address.setFirstName(name);
+        address.setLastName("Last");
+        address.setStreetAddress("123 Street Address");
+        address.setCity("City");
+        address.setState("AA");
+        address.setZipCode("12345");
+        address.setCountry("Country");
+        address.setEmail("email@address.com");
+        address.setPhoneNumber("1234567890");
+        return address;
+    }
+
+    private Statistics statistics() {
+        return ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory().getStatistics();
     }
 }
@@ -0,0 +1,64 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.service.CatalogExportService;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class CatalogExportEndpointTest {
+
+    @Mock
+    private CatalogExportService catalogExportService;
+
+    private CatalogExportEndpoint endpoint;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        endpoint = new CatalogExportEndpoint(catalogExportService);
+        mockMvc = MockMvcBuilders.standaloneSetup(endpoint).build();
+    }
+
+    @Test
+    public void endpointIsSensitive() {
+        assertThat(endpoint.isSensitive()).isTrue();
+        assertThat(endpoint.getPath()).isEqualTo("/catalog-export");
+    }
+
+    @Test
+    public void exportWritesTheFeedToTheResponse() throws Exception {
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArguments()[0]).write("product_id\n1\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(catalogExportService).export(any(OutputStream.class), eq(Format.CSV));
+
+        mockMvc.perform(get("/catalog-export").param("format", "csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"catalog.csv\""))
+                .andExpect(content().string("product_id\n1\n"));
+    }
+
+    @Test
+    public void exportRejectsUnknownFormat() throws Exception {
+        mockMvc.perform(get("/catalog-export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+}
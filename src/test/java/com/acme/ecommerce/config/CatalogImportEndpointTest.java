@@ -0,0 +1,95 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.domain.ImportResult;
+import com.acme.ecommerce.service.CatalogImportService;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class CatalogImportEndpointTest {
+
+    @Mock
+    private CatalogImportService catalogImportService;
+
+    private CatalogImportEndpoint endpoint;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        endpoint = new CatalogImportEndpoint(catalogImportService);
+        mockMvc = MockMvcBuilders.standaloneSetup(endpoint).build();
+    }
+
+    @Test
+    public void endpointIsSensitive() {
+        assertThat(endpoint.isSensitive()).isTrue();
+        assertThat(endpoint.getPath()).isEqualTo("/catalog-import");
+    }
+
+    @Test
+    public void importCsvReturnsCounts() throws Exception {
+        when(catalogImportService.importFeed(any(InputStream.class), eq(Format.CSV)))
+                .thenReturn(new ImportResult(false, 3, 2, 1, 10));
+
+        mockMvc.perform(post("/catalog-import").contentType(CatalogImportService.TEXT_CSV).content("product_id\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"rowsWritten\":2")))
+                .andExpect(content().string(containsString("\"rowsRejected\":1")));
+    }
+
+    @Test
+    public void importNdjsonUsesNdjsonFormat() throws Exception {
+        when(catalogImportService.importFeed(any(InputStream.class), eq(Format.NDJSON)))
+                .thenReturn(new ImportResult(false, 1, 1, 0, 10));
+
+        mockMvc.perform(post("/catalog-import").contentType(CatalogImportService.APPLICATION_NDJSON).content("{}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"rowsWritten\":1")));
+    }
+
+    @Test
+    public void secondImportIsAConflict() throws Exception {
+        when(catalogImportService.importFeed(any(InputStream.class), eq(Format.CSV)))
+                .thenThrow(new IllegalStateException("A catalog import is already running"));
+
+        mockMvc.perform(post("/catalog-import").contentType(CatalogImportService.TEXT_CSV).content("product_id\n"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void badFeedIsABadRequest() throws Exception {
+        when(catalogImportService.importFeed(any(InputStream.class), eq(Format.CSV)))
+                .thenThrow(new IllegalArgumentException("Missing column price"));
+
+        mockMvc.perform(post("/catalog-import").contentType(CatalogImportService.TEXT_CSV).content("product_id\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Missing column price"));
+    }
+
+    @Test
+    public void progressReportsRunningImport() throws Exception {
+        when(catalogImportService.getProgress()).thenReturn(new ImportResult(true, 500, 400, 0, 1000));
+
+        mockMvc.perform(get("/catalog-import"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"running\":true")))
+                .andExpect(content().string(containsString("\"rowsPerSecond\":400")));
+    }
+}
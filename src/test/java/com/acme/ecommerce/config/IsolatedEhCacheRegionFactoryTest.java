@@ -0,0 +1,47 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.domain.Product;
+import net.sf.ehcache.Element;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsolatedEhCacheRegionFactoryTest {
+
+    private final IsolatedEhCacheRegionFactory first = new IsolatedEhCacheRegionFactory();
+    private final IsolatedEhCacheRegionFactory second = new IsolatedEhCacheRegionFactory();
+
+    @After
+    public void tearDown() {
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    public void factoriesOpenAtTheSameTimeDoNotShareEntries() {
+        first.start(null, properties());
+        second.start(null, properties());
+
+        assertThat(first.getCacheManager()).isNotSameAs(second.getCacheManager());
+        first.getCacheManager().getCache(Product.CACHE_REGION).put(new Element(1L, "cached"));
+        assertThat(second.getCacheManager().getCache(Product.CACHE_REGION).get(1L)).isNull();
+    }
+
+    @Test
+    public void regionsComeFromTheConfiguredFile() {
+        first.start(null, properties());
+
+        assertThat(first.getCacheManager().getName()).startsWith("hibernate@");
+        assertThat(first.getCacheManager().getCache(Product.CACHE_REGION).getCacheConfiguration()
+                .getMaxElementsInMemory()).isEqualTo(10000);
+    }
+
+    private static Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty("net.sf.ehcache.configurationResourceName", "/ehcache-hibernate.xml");
+        return properties;
+    }
+}
@@ -0,0 +1,74 @@
+package com.acme.ecommerce.config;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.stereotype.Controller;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class PrometheusEndpointTest {
+
+    private MetricRegistry registry;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        registry = new MetricRegistry();
+        mockMvc = MockMvcBuilders.standaloneSetup(new ItemController(), new PrometheusEndpoint(registry))
+                .addInterceptors(new RequestMetricsInterceptor(registry)).build();
+    }
+
+    @Test
+    public void requestsAreTimedPerMapping() throws Exception {
+        mockMvc.perform(get("/item/1")).andExpect(status().isOk());
+        mockMvc.perform(get("/item/2")).andExpect(status().isOk());
+
+        assertThat(registry.getTimers().keySet()).containsOnly("request.GET./item/{id}");
+        assertThat(registry.timer("request.GET./item/{id}").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void scrapeIsInPrometheusTextFormat() throws Exception {
+        mockMvc.perform(get("/item/1")).andExpect(status().isOk());
+        registry.timer("purchase.save").update(250, TimeUnit.MILLISECONDS);
+        registry.meter("cart.stock.rejected").mark(3);
+
+        mockMvc.perform(get("/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/plain"))
+                .andExpect(content().string(containsString("# TYPE request_seconds summary\n")))
+                .andExpect(content().string(containsString("request_seconds_count{method=\"GET\",uri=\"/item/{id}\"} 1\n")))
+                .andExpect(content().string(containsString("purchase_save_seconds{quantile=\"0.99\"} 0.25\n")))
+                .andExpect(content().string(containsString("purchase_save_seconds_count 1\n")))
+                .andExpect(content().string(containsString("# TYPE cart_stock_rejected_total counter\n")))
+                .andExpect(content().string(containsString("cart_stock_rejected_total 3\n")));
+    }
+
+    @Test
+    public void namesAreSanitized() {
+        assertThat(PrometheusEndpoint.sanitize("gauge.response.product.detail")).isEqualTo("gauge_response_product_detail");
+        assertThat(PrometheusEndpoint.sanitize("2xx-count")).isEqualTo("_2xx_count");
+        assertThat(PrometheusEndpoint.escape("/a\"b\\")).isEqualTo("/a\\\"b\\\\");
+    }
+
+    @Controller
+    static class ItemController {
+
+        @RequestMapping("/item/{id}")
+        @ResponseBody
+        String item(@PathVariable long id) {
+            return "item " + id;
+        }
+    }
+}
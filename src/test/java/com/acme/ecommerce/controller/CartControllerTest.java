@@ -7,8 +7,11 @@ import com.acme.ecommerce.domain.Product;
 import com.acme.ecommerce.domain.ProductPurchase;
 import com.acme.ecommerce.domain.Purchase;
 import com.acme.ecommerce.domain.ShoppingCart;
+import com.acme.ecommerce.service.CartExpiryService;
+import com.acme.ecommerce.service.CartStoreService;
+import com.acme.ecommerce.service.InventoryService;
+import com.acme.ecommerce.service.MetricsService;
 import com.acme.ecommerce.service.ProductService;
-import com.acme.ecommerce.service.PurchaseService;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,8 +32,12 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -48,9 +55,15 @@ public class CartControllerTest {
     @Mock
     private ProductService productService;
     @Mock
-    private PurchaseService purchaseService;
-    @Mock
     private ShoppingCart sCart;
+    @Mock
+    private InventoryService inventoryService;
+    @Mock
+    private CartExpiryService cartExpiryService;
+    @Mock
+    private CartStoreService cartStoreService;
+    @Mock
+    private MetricsService metricsService;
     @InjectMocks
     private CartController cartController;
 
@@ -106,6 +119,21 @@ public class CartControllerTest {
                 .andExpect(redirectedUrl("/product/"));
     }
 
+    @Test
+    public void addExistingProductToCartMergesLineTest() throws Exception {
+        Product product = productBuilder();
+        when(productService.findById(1L)).thenReturn(product);
+        Purchase purchase = purchaseBuilder(product);
+        when(sCart.getPurchase()).thenReturn(purchase);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/cart/add").param("quantity", "2").param("productId", "1"))
+                .andDo(print())
+                .andExpect(status().is3xxRedirection());
+
+        assertThat(purchase.getProductPurchases()).hasSize(1);
+        assertThat(purchase.findProductPurchase(1L).getQuantity()).isEqualTo(3);
+    }
+
     @Test
     public void addUnknownToCartTest() throws Exception {
         when(productService.findById(1L)).thenReturn(null);
@@ -132,6 +160,21 @@ public class CartControllerTest {
                 .andExpect(redirectedUrl("/cart"));
     }
 
+    @Test
+    public void updateCartKeepsRunningTotalsTest() throws Exception {
+        Product product = productBuilder();
+        when(productService.findById(1L)).thenReturn(product);
+        Purchase purchase = purchaseBuilder(product);
+        when(sCart.getPurchase()).thenReturn(purchase);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/cart/update").param("newQuantity", "3").param("productId", "1"))
+                .andDo(print())
+                .andExpect(status().is3xxRedirection());
+
+        assertThat(purchase.getItemCount()).isEqualTo(3);
+        assertThat(purchase.getSubTotal()).isEqualByComparingTo(product.getPrice().multiply(new BigDecimal(3)));
+    }
+
     @Test
     public void updateUnknownCartTest() throws Exception {
         when(productService.findById(1L)).thenReturn(null);
@@ -182,7 +225,6 @@ public class CartControllerTest {
 
         when(sCart.getPurchase()).thenReturn(purchase);
 
-        when(purchaseService.save(purchase)).thenReturn(purchase);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1")).andDo(print())
                 .andExpect(status().is3xxRedirection())
@@ -218,7 +260,6 @@ public class CartControllerTest {
 
         when(sCart.getPurchase()).thenReturn(purchase);
 
-        when(purchaseService.save(purchase)).thenReturn(purchase);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1")).andDo(print())
                 .andExpect(status().is3xxRedirection())
@@ -254,7 +295,6 @@ public class CartControllerTest {
 
         when(sCart.getPurchase()).thenReturn(purchase);
 
-        when(purchaseService.save(purchase)).thenReturn(purchase);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/cart/empty")).andDo(print())
                 .andExpect(status().is3xxRedirection())
@@ -276,7 +316,7 @@ public class CartControllerTest {
         product.setId(1L);
         product.setDesc("TestDesc");
         product.setName("TestName");
-        product.setPrice(new BigDecimal(1.99));
+        product.setPrice(new BigDecimal("1.99"));
         product.setQuantity(3);
         product.setFullImageName("imagename");
         product.setThumbImageName("imagename");
@@ -297,17 +337,55 @@ public class CartControllerTest {
         return purchase;
     }
 
+    @Test
+    public void placedOrderCannotBeChanged() throws Exception {
+        Product product = productBuilder();
+        when(productService.findById(1L)).thenReturn(product);
+        Purchase purchase = purchaseBuilder(product);
+        purchase.setOrderNumber("27409661067264");
+        when(sCart.getPurchase()).thenReturn(purchase);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1"))
+                .andDo(print())
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/checkout/confirmation"));
+        mockMvc.perform(MockMvcRequestBuilders.post("/cart/add").param("quantity", "1").param("productId", "1"))
+                .andExpect(redirectedUrl("/checkout/confirmation"));
+        verify(inventoryService, never()).release(any(Product.class), anyInt());
+        verify(inventoryService, never()).reserve(any(Product.class), anyInt());
+        assertThat(purchase.getProductPurchases()).hasSize(1);
+    }
+
     // TODO: Test Bugfix 2 - done
-    @Test(expected = OrderQuantityGreaterThanStockException.class)
-    public void t_orderingAboveStockLevelThrowsException() throws Exception {
+    @Test
+    public void t_orderingAboveStockLevelIsRejected() throws Exception {
+        Product product = productBuilder();
+        when(productService.findById(1L)).thenReturn(product);
+        doThrow(new OrderQuantityGreaterThanStockException(product, 3)).when(inventoryService).reserve(product, 5);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/cart/add").param("quantity", "5").param("productId", "1")
+                .header("referer", "/product/detail/1"))
+                .andDo(print())
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/product/detail/1"))
+                .andExpect(flash().attribute("flash", Matchers.hasProperty("status", Matchers.equalTo(FlashMessage.Status.FAILURE))));
+        verify(sCart, never()).setPurchase(any(Purchase.class));
+        verify(metricsService).mark(MetricsService.STOCK_REJECTED);
+        verify(metricsService, never()).mark(MetricsService.CART_ADD);
+    }
+
+    @Test
+    public void t_removeFromCartReleasesStock() throws Exception {
         Product product = productBuilder();
-        doAnswer(invocation -> {
-            if (product.getQuantity() < 5) {
-                throw new OrderQuantityGreaterThanStockException(product);
-            }
-            return null;
-        }).when(productService).checkProductStock(any(Product.class), any(Integer.class));
-        productService.checkProductStock(product, 5);
+        when(productService.findById(1L)).thenReturn(product);
+        Purchase purchase = purchaseBuilder(product);
+        when(sCart.getPurchase()).thenReturn(purchase);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1"))
+                .andDo(print())
+                .andExpect(status().is3xxRedirection());
+        verify(inventoryService).release(product, 1);
+        verify(cartStoreService).markDirty(purchase);
     }
 
     // TODO Test Enhancement 5 - done
@@ -383,7 +461,6 @@ public class CartControllerTest {
 
         when(sCart.getPurchase()).thenReturn(purchase);
 
-        when(purchaseService.save(purchase)).thenReturn(purchase);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1")).andDo(print())
                 .andExpect(flash().attributeCount(1))
@@ -419,7 +496,6 @@ public class CartControllerTest {
         purchase.setProductPurchases(ppList);
 
         when(sCart.getPurchase()).thenReturn(purchase);
-        when(purchaseService.save(purchase)).thenReturn(purchase);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/cart/empty")).andDo(print())
                 .andExpect(flash().attributeCount(1))
@@ -2,8 +2,15 @@ package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.Application;
 import com.acme.ecommerce.domain.*;
+import com.acme.ecommerce.service.CartExpiryService;
+import com.acme.ecommerce.service.CartStoreService;
+import com.acme.ecommerce.service.CouponService;
+import com.acme.ecommerce.service.InventoryService;
+import com.acme.ecommerce.service.MetricsService;
+import com.acme.ecommerce.service.OrderNumberService;
 import com.acme.ecommerce.service.ProductService;
 import com.acme.ecommerce.service.PurchaseService;
+import com.acme.ecommerce.service.ReceiptService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,19 +19,34 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.mock.web.MockHttpSession;
+import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -45,6 +67,20 @@ public class CheckoutControllerTest {
     private PurchaseService purchaseService;
     @Mock
     private ShoppingCart sCart;
+    @Mock
+    private InventoryService inventoryService;
+    @Mock
+    private CartExpiryService cartExpiryService;
+    @Mock
+    private CartStoreService cartStoreService;
+    @Mock
+    private CouponService couponService;
+    @Mock
+    private OrderNumberService orderNumberService;
+    @Mock
+    private ReceiptService receiptService;
+    @Mock
+    private MetricsService metricsService;
     @InjectMocks
     private CheckoutController checkoutController;
 
@@ -213,6 +249,7 @@ public class CheckoutControllerTest {
         when(sCart.getCouponCode()).thenReturn(coupon);
 
         when(purchaseService.save(purchase)).thenReturn(purchase);
+        when(orderNumberService.nextId()).thenReturn(27409661067264L);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/checkout/billing").param("firstName", "john")
                 .param("lastName", "smith").param("streetAddress", "123 main st.").param("city", "centerville")
@@ -223,6 +260,38 @@ public class CheckoutControllerTest {
                 .param("billingAddressSame", "false")).andDo(print())
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("confirmation"));
+        verify(inventoryService).commit(purchase);
+        verify(cartExpiryService).untrack(purchase);
+        verify(cartStoreService).flush(purchase);
+        verify(metricsService).mark(MetricsService.CHECKOUT_BILLING);
+        assertThat(purchase.getOrderNumber()).isEqualTo("27409661067264");
+        assertThat(purchase.getOrderId()).isEqualTo(27409661067264L);
+    }
+
+    @Test
+    public void postBillingWithStockGoneReturnsToTheCart() throws Exception {
+        Product product = productBuilder();
+        Purchase purchase = purchaseBuilder(product);
+        when(sCart.getPurchase()).thenReturn(purchase);
+        doThrow(new IllegalStateException("Committing 1 of product 1 but only 0 on hand"))
+                .when(inventoryService).commit(purchase);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/checkout/billing").param("firstName", "john")
+                .param("lastName", "smith").param("streetAddress", "123 main st.").param("city", "centerville")
+                .param("state", "WA").param("zipCode", "12345").param("country", "USA")
+                .param("phoneNumber", "1234567890").param("email", "ab@c.com")
+                .param("creditCardNumber", "1234567890123456").param("creditCardName", "john smith")
+                .param("creditCardExpMonth", "5").param("creditCardExpYear", "2016").param("creditCardCVC", "123")
+                .param("billingAddressSame", "false")).andDo(print())
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/cart"))
+                .andExpect(flash().attributeExists("flash"));
+        verify(inventoryService).release(product, 1);
+        verify(cartStoreService).markDirty(purchase);
+        verify(cartExpiryService, never()).untrack(purchase);
+        verify(metricsService).mark(MetricsService.STOCK_REJECTED);
+        assertThat(purchase.getProductPurchases()).isEmpty();
+        assertThat(purchase.getOrderNumber()).isNull();
     }
 
     @Test
@@ -295,6 +364,45 @@ public class CheckoutControllerTest {
         mockMvc.perform(MockMvcRequestBuilders.get("/checkout/email")).andDo(print()).andExpect(status().isOk());
     }
 
+    @Test
+    public void emailRendersReceiptAndResetsCartTest() throws Exception {
+        Purchase purchase = purchaseBuilder(productBuilder());
+        purchase.setOrderNumber("27409661067264");
+        when(sCart.getPurchase()).thenReturn(purchase);
+
+        File receipt = File.createTempFile("receipt", ".html");
+        receipt.deleteOnExit();
+        Files.write(receipt.toPath(), "<html>receipt</html>".getBytes(StandardCharsets.UTF_8));
+        when(receiptService.findReceipt(eq("27409661067264"), anyMapOf(String.class, Object.class)))
+                .thenReturn(new AsyncResult<File>(receipt));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/checkout/email"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=email_receipt.html"))
+                .andExpect(content().string("<html>receipt</html>"));
+
+        verify(sCart).setLastOrderNumber("27409661067264");
+        verify(sCart).setPurchase(null);
+    }
+
+    @Test
+    public void emailRedownloadServesSpooledReceiptTest() throws Exception {
+        when(sCart.getPurchase()).thenReturn(null);
+        when(sCart.getLastOrderNumber()).thenReturn("27409661067264");
+        SettableListenableFuture<File> missing = new SettableListenableFuture<File>();
+        missing.setException(new FileNotFoundException("No receipt for order 27409661067264"));
+        when(receiptService.findReceipt("27409661067264", null)).thenReturn(missing);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/checkout/email"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound());
+    }
+
     private Product productBuilder() {
         Product product = new Product();
         product.setId(1L);
@@ -324,6 +432,7 @@ public class CheckoutControllerTest {
     // TODO: Test Bugfix 1 - done
     @Test
     public void t_validCouponCodeIsAccepted() throws Exception {
+        when(couponService.isValid("abcde")).thenReturn(true);
         mockMvc.perform(post("/checkout/coupon").param("code", "abcde"))
                 .andExpect(redirectedUrl("shipping"));
     }
@@ -334,4 +443,53 @@ public class CheckoutControllerTest {
         mockMvc.perform(post("/checkout/coupon").param("code", "abcd"))
                 .andExpect(redirectedUrl("coupon"));
     }
+
+    @Test
+    public void t_unknownCouponCodeIsRejected() throws Exception {
+        when(couponService.isValid("zzzzz")).thenReturn(false);
+        mockMvc.perform(post("/checkout/coupon").param("code", "zzzzz"))
+                .andExpect(redirectedUrl("coupon"))
+                .andExpect(flash().attributeExists("flash"));
+        verify(sCart, never()).setCouponCode(any(CouponCode.class));
+    }
+
+    @Test
+    public void t_everyCouponCodeIsChecked() throws Exception {
+        when(couponService.isValid("SAVE10")).thenReturn(true);
+        when(couponService.isValid("zzzzz")).thenReturn(false);
+        mockMvc.perform(post("/checkout/coupon").param("code", "SAVE10, zzzzz"))
+                .andExpect(redirectedUrl("coupon"))
+                .andExpect(flash().attributeExists("flash"));
+        verify(sCart, never()).setCouponCode(any(CouponCode.class));
+    }
+
+    @Test
+    public void t_severalCouponCodesArePassedOn() throws Exception {
+        Purchase purchase = purchaseBuilder(productBuilder());
+        CouponCode couponCode = new CouponCode();
+        couponCode.setCode(" FROGS3, BIG25 ");
+
+        when(sCart.getPurchase()).thenReturn(purchase);
+        when(sCart.getCouponCode()).thenReturn(couponCode);
+        when(couponService.discount(purchase, 199L, "FROGS3", "BIG25")).thenReturn(50L);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/checkout/shipping"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("subTotal", new BigDecimal("1.49")));
+    }
+
+    @Test
+    public void t_couponDiscountIsTakenOffSubtotal() throws Exception {
+        Purchase purchase = purchaseBuilder(productBuilder());
+        CouponCode couponCode = new CouponCode();
+        couponCode.setCode("SAVE10");
+
+        when(sCart.getPurchase()).thenReturn(purchase);
+        when(sCart.getCouponCode()).thenReturn(couponCode);
+        when(couponService.discount(purchase, 199L, "SAVE10")).thenReturn(20L);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/checkout/shipping"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("subTotal", new BigDecimal("1.79")));
+    }
 }
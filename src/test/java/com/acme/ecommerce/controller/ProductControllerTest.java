@@ -3,33 +3,50 @@ package com.acme.ecommerce.controller;
 import com.acme.ecommerce.Application;
 import com.acme.ecommerce.domain.Product;
 import com.acme.ecommerce.domain.ProductNotFoundException;
+import com.acme.ecommerce.domain.ProductPage;
 import com.acme.ecommerce.domain.ProductPurchase;
 import com.acme.ecommerce.domain.Purchase;
 import com.acme.ecommerce.domain.ShoppingCart;
+import com.acme.ecommerce.service.ImageService;
+import com.acme.ecommerce.service.ImageServiceImpl;
 import com.acme.ecommerce.service.ProductService;
+import com.acme.ecommerce.service.SearchService;
+import com.acme.ecommerce.service.ThumbnailService;
+import com.acme.ecommerce.service.ThumbnailServiceImpl;
+import org.hamcrest.Matchers;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.io.FileNotFoundException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -50,16 +67,29 @@ public class ProductControllerTest {
 
     @Mock
     private ProductService productService;
+    @Mock
+    private SearchService searchService;
+    @Spy
+    private ImageService imageService = new ImageServiceImpl();
     @InjectMocks
     private ProductController productController;
 
+    private ThumbnailService thumbnailService;
+
+    @Rule
+    public TemporaryFolder thumbnailFolder = new TemporaryFolder();
+
     private MockMvc mockMvc;
 
     @Before
-    public void setup() {
+    public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
         mockMvc = MockMvcBuilders.standaloneSetup(productController).build();
-        productController.imagePath = "src/test/resources/"; // properties hack because @Value wouldn't resolve
+        // properties hack because @Value wouldn't resolve; the fixtures are found wherever the build puts them
+        ReflectionTestUtils.setField(imageService, "imagePath", new ClassPathResource("fork.jpg").getFile().getParent());
+        thumbnailService = new ThumbnailServiceImpl(imageService, new SimpleAsyncTaskExecutor(), 120,
+                thumbnailFolder.getRoot().getPath(), 1024 * 1024);
+        ReflectionTestUtils.setField(productController, "thumbnailService", thumbnailService);
     }
 
     @Test
@@ -83,6 +113,57 @@ public class ProductControllerTest {
                 .andExpect(view().name("index"));
     }
 
+    @Test
+    public void getIndexNextPageSeeksPastLastId() throws Exception {
+        Product product = productBuilder();
+        product.setId(6L);
+        ProductPage page = new ProductPage(Collections.singletonList(product), 1, 5, 6, true, false);
+
+        when(productService.findPageAfter(5L, 1, 5)).thenReturn(page);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/").param("after", "5").param("page", "2"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("index"))
+                .andExpect(model().attribute("products", page));
+    }
+
+    @Test
+    public void getIndexLastPageSeeksFromTheEnd() throws Exception {
+        Product product = productBuilder();
+        product.setId(6L);
+        ProductPage page = new ProductPage(Collections.singletonList(product), 1, 5, 6, true, false);
+
+        when(productService.findPageBefore(null, 0, 5)).thenReturn(page);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/").param("last", "true"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("products", page));
+    }
+
+    @Test
+    public void searchListsMatchesOnIndex() throws Exception {
+        Product product = productBuilder();
+
+        when(searchService.search("test", 50)).thenReturn(Collections.singletonList(product));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/search").param("q", "test"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("index"))
+                .andExpect(model().attribute("query", "test"))
+                .andExpect(model().attribute("products", Matchers.hasProperty("totalPages", Matchers.is(1))))
+                .andExpect(model().attribute("products", Matchers.hasProperty("content",
+                        Matchers.contains(product))));
+    }
+
+    @Test
+    public void suggestReturnsCompletionsAsJson() throws Exception {
+        when(searchService.suggest("silver fo", 10)).thenReturn(Arrays.asList("silver fork", "silver foil"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/suggest").param("q", "silver fo"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[\"silver fork\",\"silver foil\"]"));
+    }
+
     @Test
     public void getProductDetail() throws Exception {
         Product product = productBuilder();
@@ -115,6 +196,92 @@ public class ProductControllerTest {
                 .andExpect(content().contentType("image/jpeg"));
     }
 
+    @Test
+    public void getProductImageRange() throws Exception {
+
+        Product product = productBuilder();
+        product.setFullImageName("fork.jpg");
+
+        when(productService.findById(1L)).thenReturn(product);
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").header("Range", "bytes=0-99")).andDo(print())
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Length", "100"))
+                .andExpect(header().string("Content-Range", Matchers.startsWith("bytes 0-99/")));
+    }
+
+    @Test
+    public void getProductImageUnsatisfiableRange() throws Exception {
+
+        Product product = productBuilder();
+        product.setFullImageName("fork.jpg");
+
+        when(productService.findById(1L)).thenReturn(product);
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").header("Range", "bytes=99999999-")).andDo(print())
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    public void getProductImageNotModified() throws Exception {
+
+        Product product = productBuilder();
+        product.setFullImageName("fork.jpg");
+
+        when(productService.findById(1L)).thenReturn(product);
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").header("If-None-Match", eTag)).andDo(print())
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void getFingerprintedProductImageIsImmutable() throws Exception {
+
+        Product product = productBuilder();
+        product.setFullImageName("fork.jpg");
+
+        when(productService.findById(1L)).thenReturn(product);
+        String version = imageService.fingerprint(product);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").param("v", version)).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + version + "\""))
+                .andExpect(header().string("Cache-Control", Matchers.containsString("immutable")));
+    }
+
+    @Test
+    public void getProductThumbnail() throws Exception {
+
+        Product product = productBuilder();
+        product.setThumbImageName("fork.jpg");
+
+        when(productService.findById(1L)).thenReturn(product);
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/product/1/thumb"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().string("ETag", "\"" + thumbnailService.fingerprint(product) + "\""));
+    }
+
+    @Test
+    public void getProductThumbnailNotModified() throws Exception {
+
+        Product product = productBuilder();
+        product.setThumbImageName("fork.jpg");
+
+        when(productService.findById(1L)).thenReturn(product);
+        String version = thumbnailService.fingerprint(product);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/product/1/thumb").param("v", version)
+                .header("If-None-Match", "\"" + version + "\"")).andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("Cache-Control", Matchers.containsString("immutable")));
+    }
+
     @Test(expected = FileNotFoundException.class)
     public void getProductImageFail() throws Exception {
 
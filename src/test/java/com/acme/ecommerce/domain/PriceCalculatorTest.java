@@ -0,0 +1,62 @@
+package com.acme.ecommerce.domain;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceCalculatorTest {
+
+	@Test
+	public void toCentsRoundsHalfCentsUp() {
+		assertThat(PriceCalculator.toCents(new BigDecimal("2.58"))).isEqualTo(258);
+		assertThat(PriceCalculator.toCents(new BigDecimal("1.005"))).isEqualTo(101);
+		assertThat(PriceCalculator.toCents(new BigDecimal("1.0049"))).isEqualTo(100);
+		assertThat(PriceCalculator.toCents(new BigDecimal("-1.005"))).isEqualTo(-101);
+		assertThat(PriceCalculator.toCents(new BigDecimal("7"))).isEqualTo(700);
+	}
+
+	@Test
+	public void toDecimalKeepsTwoPlaces() {
+		assertThat(PriceCalculator.toDecimal(258)).isEqualTo(new BigDecimal("2.58"));
+		assertThat(PriceCalculator.toDecimal(5)).isEqualTo(new BigDecimal("0.05"));
+		assertThat(PriceCalculator.toDecimal(0)).isEqualTo(new BigDecimal("0.00"));
+	}
+
+	@Test
+	public void percentOffRoundsTheDiscountHalfUp() {
+		// 10% of 10.05 is 1.005, the discount rounds to 1.01
+		assertThat(PriceCalculator.percentOff(1005, 1000)).isEqualTo(904);
+		// 0.5 cent off rounds to a whole cent, 0.4 cent off to nothing
+		assertThat(PriceCalculator.percentOff(5, 1000)).isEqualTo(4);
+		assertThat(PriceCalculator.percentOff(4, 1000)).isEqualTo(4);
+		assertThat(PriceCalculator.percentOff(1999, 0)).isEqualTo(1999);
+		assertThat(PriceCalculator.percentOff(1999, PriceCalculator.BASIS_POINTS)).isEqualTo(0);
+	}
+
+	@Test
+	public void divideHalfUpRoundsAwayFromZero() {
+		assertThat(PriceCalculator.divideHalfUp(15, 10)).isEqualTo(2);
+		assertThat(PriceCalculator.divideHalfUp(14, 10)).isEqualTo(1);
+		assertThat(PriceCalculator.divideHalfUp(-15, 10)).isEqualTo(-2);
+		assertThat(PriceCalculator.divideHalfUp(-14, 10)).isEqualTo(-1);
+	}
+
+	@Test
+	public void largeQuantitiesStayExact() {
+		assertThat(PriceCalculator.lineTotal(258, Integer.MAX_VALUE)).isEqualTo(258L * Integer.MAX_VALUE);
+		assertThat(PriceCalculator.percentOff(1000000000000L, 1000)).isEqualTo(900000000000L);
+		assertThat(PriceCalculator.percentOff(1000000000005L, 1000)).isEqualTo(900000000004L);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void lineTotalOverflowIsAnError() {
+		PriceCalculator.lineTotal(Long.MAX_VALUE / 2, 3);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void percentOffOverflowIsAnError() {
+		PriceCalculator.percentOff(Long.MAX_VALUE / 100, 1000);
+	}
+}
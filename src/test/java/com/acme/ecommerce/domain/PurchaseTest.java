@@ -0,0 +1,157 @@
+package com.acme.ecommerce.domain;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PurchaseTest {
+
+	@Test
+	public void linesAreFoundByProduct() {
+		Purchase purchase = new Purchase();
+		Product first = productBuilder(1L, "1.00");
+		Product second = productBuilder(2L, "2.00");
+		purchase.addProductPurchase(first, 1);
+		purchase.addProductPurchase(second, 2);
+
+		assertThat(purchase.findProductPurchase(1L).getProduct()).isSameAs(first);
+		assertThat(purchase.findProductPurchase(2L).getQuantity()).isEqualTo(2);
+		assertThat(purchase.findProductPurchase(3L)).isNull();
+	}
+
+	@Test
+	public void removingALineKeepsTheOrderOfTheOthers() {
+		Purchase purchase = new Purchase();
+		for (long id = 1; id <= 4; id++) {
+			purchase.addProductPurchase(productBuilder(id, "1.00"), 1);
+		}
+
+		purchase.removeProductPurchase(2L);
+
+		assertThat(productIds(purchase)).containsExactly(1L, 3L, 4L);
+		assertThat(purchase.findProductPurchase(3L).getProduct().getId()).isEqualTo(3L);
+		assertThat(purchase.findProductPurchase(4L).getProduct().getId()).isEqualTo(4L);
+		assertThat(purchase.findProductPurchase(2L)).isNull();
+
+		purchase.addProductPurchase(productBuilder(2L, "1.00"), 1);
+		assertThat(productIds(purchase)).containsExactly(1L, 3L, 4L, 2L);
+		assertThat(purchase.findProductPurchase(2L).getProduct().getId()).isEqualTo(2L);
+	}
+
+	@Test
+	public void removingAnUnknownProductChangesNothing() {
+		Purchase purchase = new Purchase();
+		purchase.addProductPurchase(productBuilder(1L, "1.00"), 1);
+
+		assertThat(purchase.removeProductPurchase(9L)).isNull();
+		assertThat(productIds(purchase)).containsExactly(1L);
+	}
+
+	@Test
+	public void indexFollowsAReplacedList() {
+		Purchase purchase = new Purchase();
+		purchase.addProductPurchase(productBuilder(1L, "1.00"), 1);
+
+		List<ProductPurchase> lines = new ArrayList<ProductPurchase>();
+		ProductPurchase line = new ProductPurchase();
+		line.setProduct(productBuilder(5L, "1.00"));
+		line.setQuantity(3);
+		lines.add(line);
+		purchase.setProductPurchases(lines);
+
+		assertThat(purchase.findProductPurchase(1L)).isNull();
+		assertThat(purchase.findProductPurchase(5L)).isSameAs(line);
+	}
+
+	@Test
+	public void totalsFollowAddMergeUpdateRemoveAndClear() {
+		Purchase purchase = new Purchase();
+		Product first = productBuilder(1L, "1.25");
+		Product second = productBuilder(2L, "10.00");
+
+		purchase.addProductPurchase(first, 2);
+		purchase.addProductPurchase(second, 1);
+		purchase.addProductPurchase(first, 1);
+		assertThat(purchase.getProductPurchases()).hasSize(2);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(3 * 125 + 1000);
+		assertThat(purchase.getItemCount()).isEqualTo(4);
+
+		purchase.updateProductPurchase(2L, 3);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(3 * 125 + 3000);
+		assertThat(purchase.getItemCount()).isEqualTo(6);
+
+		purchase.removeProductPurchase(1L);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(3000);
+		assertThat(purchase.getItemCount()).isEqualTo(3);
+		assertThat(purchase.getSubTotal()).isEqualByComparingTo("30.00");
+
+		purchase.clearProductPurchases();
+		assertThat(purchase.getSubTotalCents()).isEqualTo(0);
+		assertThat(purchase.getItemCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void quantitySetOnALineDirectlyIsCounted() {
+		Purchase purchase = new Purchase();
+		purchase.addProductPurchase(productBuilder(1L, "1.25"), 2);
+		purchase.addProductPurchase(productBuilder(2L, "10.00"), 1);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(1250);
+
+		purchase.getProductPurchases().get(0).setQuantity(5);
+
+		assertThat(purchase.getSubTotalCents()).isEqualTo(5 * 125 + 1000);
+		assertThat(purchase.getItemCount()).isEqualTo(6);
+
+		// running totals carry on from the recount
+		purchase.addProductPurchase(productBuilder(2L, "10.00"), 1);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(5 * 125 + 2000);
+	}
+
+	@Test
+	public void productSetOnALineDirectlyIsCounted() {
+		Purchase purchase = new Purchase();
+		purchase.addProductPurchase(productBuilder(1L, "1.25"), 2);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(250);
+
+		purchase.getProductPurchases().get(0).setProduct(productBuilder(1L, "2.00"));
+
+		assertThat(purchase.getSubTotalCents()).isEqualTo(400);
+	}
+
+	@Test
+	public void linesAddedToTheListDirectlyAreCounted() {
+		Purchase purchase = new Purchase();
+		purchase.addProductPurchase(productBuilder(1L, "1.25"), 2);
+		assertThat(purchase.getSubTotalCents()).isEqualTo(250);
+
+		ProductPurchase line = new ProductPurchase();
+		line.setProduct(productBuilder(2L, "3.00"));
+		line.setQuantity(2);
+		line.setPurchase(purchase);
+		purchase.getProductPurchases().add(line);
+
+		assertThat(purchase.getSubTotalCents()).isEqualTo(850);
+		assertThat(purchase.getItemCount()).isEqualTo(4);
+	}
+
+	private static List<Long> productIds(Purchase purchase) {
+		List<Long> ids = new ArrayList<Long>();
+		for (ProductPurchase line : purchase.getProductPurchases()) {
+			ids.add(line.getProduct().getId());
+		}
+		return ids;
+	}
+
+	private static Product productBuilder(long id, String price) {
+		Product product = new Product();
+		product.setId(id);
+		product.setName("product " + id);
+		product.setPrice(new BigDecimal(price));
+		product.setQuantity(100);
+		return product;
+	}
+}
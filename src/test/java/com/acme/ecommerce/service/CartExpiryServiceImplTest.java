@@ -0,0 +1,199 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Address;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.Purchase;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CartExpiryServiceImplTest {
+
+    private static final long TTL = 5000;
+    private static final long TICK = 1000;
+
+    @Mock
+    private InventoryService inventoryService;
+    @Mock
+    private PurchaseService purchaseService;
+    @Mock
+    private CartStoreService cartStoreService;
+
+    private ManualClock clock;
+    private CartExpiryServiceImpl cartExpiryService;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(purchaseService.deleteAbandoned(anyCollectionOf(Long.class))).thenReturn(1);
+        clock = new ManualClock(1000000);
+        cartExpiryService = new CartExpiryServiceImpl(inventoryService, purchaseService, cartStoreService,
+                TTL, TICK, 2, clock);
+    }
+
+    @Test
+    public void cartExpiresOnceItsDeadlinePasses() {
+        Purchase purchase = purchaseBuilder(1L);
+        cartExpiryService.touch(purchase);
+
+        clock.advance(TTL - 1);
+        assertThat(cartExpiryService.expire()).isEqualTo(0);
+
+        clock.advance(TICK);
+        assertThat(cartExpiryService.expire()).isEqualTo(1);
+        verify(cartStoreService).discard(purchase);
+        verify(inventoryService).release(purchase);
+        verify(purchaseService).deleteAbandoned(Collections.singletonList(1L));
+        assertThat(purchase.getProductPurchases()).isEmpty();
+    }
+
+    @Test
+    public void touchMovesTheDeadline() {
+        Purchase purchase = purchaseBuilder(1L);
+        cartExpiryService.touch(purchase);
+
+        clock.advance(4000);
+        cartExpiryService.touch(purchase);
+        clock.advance(2000);
+        // its first slot came and went, the deadline check sent it on to the new one
+        assertThat(cartExpiryService.expire()).isEqualTo(0);
+
+        clock.advance(2000);
+        assertThat(cartExpiryService.expire()).isEqualTo(0);
+        clock.advance(1000);
+        assertThat(cartExpiryService.expire()).isEqualTo(1);
+    }
+
+    @Test
+    public void catchesUpAfterAStallLongerThanTheWheel() {
+        Purchase purchase = purchaseBuilder(1L);
+        cartExpiryService.touch(purchase);
+        cartExpiryService.expire();
+
+        // more than a full turn of the wheel without a tick
+        clock.advance(TICK * 2000);
+
+        assertThat(cartExpiryService.expire()).isEqualTo(1);
+        verify(inventoryService).release(purchase);
+    }
+
+    @Test
+    public void untrackedCartsNeverExpire() {
+        Purchase purchase = purchaseBuilder(1L);
+        cartExpiryService.touch(purchase);
+        cartExpiryService.untrack(purchase);
+
+        clock.advance(TTL + TICK);
+
+        assertThat(cartExpiryService.expire()).isEqualTo(0);
+        verify(inventoryService, never()).release(any(Purchase.class));
+    }
+
+    @Test
+    public void placedOrdersAreNotPurged() {
+        Purchase purchase = purchaseBuilder(1L);
+        cartExpiryService.touch(purchase);
+        purchase.setOrderNumber("27409661067264");
+
+        clock.advance(TTL + TICK);
+        cartExpiryService.expire();
+
+        verify(inventoryService, never()).release(any(Purchase.class));
+        verify(purchaseService, never()).deleteAbandoned(anyCollectionOf(Long.class));
+        assertThat(purchase.getProductPurchases()).hasSize(1);
+        assertThat(purchase.getId()).isEqualTo(1L);
+    }
+
+    @Test
+    public void purgedCartForgetsItsRows() {
+        Purchase purchase = purchaseBuilder(1L);
+        Address address = new Address();
+        address.setId(7L);
+        purchase.setShippingAddress(address);
+        cartExpiryService.touch(purchase);
+
+        clock.advance(TTL + TICK);
+        cartExpiryService.expire();
+
+        // written again as new rows if the shopper comes back, the delete can't race with that write
+        assertThat(purchase.getId()).isNull();
+        assertThat(address.getId()).isNull();
+        InOrder order = inOrder(cartStoreService, purchaseService);
+        order.verify(cartStoreService).discard(purchase);
+        order.verify(purchaseService).deleteAbandoned(Collections.singletonList(1L));
+    }
+
+    @Test
+    public void expiredCartsArePurgedInBatches() {
+        for (long id = 1; id <= 3; id++) {
+            cartExpiryService.touch(purchaseBuilder(id));
+        }
+
+        clock.advance(TTL + TICK);
+
+        assertThat(cartExpiryService.expire()).isEqualTo(3);
+        verify(purchaseService, times(2)).deleteAbandoned(anyCollectionOf(Long.class));
+    }
+
+    private Purchase purchaseBuilder(long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("product " + id);
+        product.setPrice(BigDecimal.ONE);
+        product.setQuantity(10);
+        Purchase purchase = new Purchase();
+        purchase.setId(id);
+        purchase.addProductPurchase(product, 1);
+        return purchase;
+    }
+
+    private static class ManualClock extends Clock {
+        private long millis;
+
+        ManualClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
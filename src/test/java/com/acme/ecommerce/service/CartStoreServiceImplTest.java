@@ -0,0 +1,158 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CartStoreServiceImplTest {
+
+    @Mock
+    private PurchaseService purchaseService;
+
+    private MetricRegistry metricRegistry;
+    private CartStoreServiceImpl cartStoreService;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        cartStoreService = new CartStoreServiceImpl(purchaseService, metricRegistry, 2);
+    }
+
+    @Test
+    public void dirtyCartIsWrittenOnceByTheNextFlush() {
+        Purchase purchase = purchaseBuilder();
+        cartStoreService.markDirty(purchase);
+        cartStoreService.markDirty(purchase);
+        cartStoreService.markDirty(purchase);
+        verify(purchaseService, never()).save(any(Purchase.class));
+
+        cartStoreService.flushAll();
+        cartStoreService.flushAll();
+
+        verify(purchaseService, times(1)).save(purchase);
+        assertThat(metricRegistry.timer("purchase.save").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void callerWritesItsOwnCartPastMaxPending() {
+        Purchase first = purchaseBuilder();
+        Purchase second = purchaseBuilder();
+        Purchase third = purchaseBuilder();
+        cartStoreService.markDirty(first);
+        cartStoreService.markDirty(second);
+        verify(purchaseService, never()).save(any(Purchase.class));
+
+        cartStoreService.markDirty(third);
+
+        verify(purchaseService).save(third);
+        cartStoreService.flushAll();
+        verify(purchaseService).save(first);
+        verify(purchaseService).save(second);
+        verify(purchaseService, times(3)).save(any(Purchase.class));
+    }
+
+    @Test
+    public void flushWritesNowAndClearsTheMark() {
+        Purchase purchase = purchaseBuilder();
+        cartStoreService.markDirty(purchase);
+
+        cartStoreService.flush(purchase);
+        cartStoreService.flushAll();
+
+        verify(purchaseService, times(1)).save(purchase);
+    }
+
+    @Test
+    public void discardedCartIsNotWritten() {
+        Purchase purchase = purchaseBuilder();
+        cartStoreService.markDirty(purchase);
+
+        cartStoreService.discard(purchase);
+        cartStoreService.flushAll();
+
+        verify(purchaseService, never()).save(any(Purchase.class));
+    }
+
+    @Test
+    public void failedWriteIsRetried() {
+        Purchase purchase = purchaseBuilder();
+        when(purchaseService.save(purchase)).thenThrow(new IllegalStateException("database down")).thenReturn(purchase);
+        cartStoreService.markDirty(purchase);
+
+        cartStoreService.flushAll();
+        cartStoreService.flushAll();
+        cartStoreService.flushAll();
+
+        verify(purchaseService, times(2)).save(purchase);
+    }
+
+    @Test
+    public void generatedIdsAreMatchedByProduct() {
+        Purchase purchase = purchaseBuilder();
+        Product first = productBuilder(1L);
+        Product second = productBuilder(2L);
+        purchase.addProductPurchase(first, 1);
+        purchase.addProductPurchase(second, 2);
+
+        // the merged copy lists its lines the other way round
+        Purchase saved = new Purchase();
+        saved.setId(10L);
+        List<ProductPurchase> savedLines = new ArrayList<ProductPurchase>();
+        savedLines.add(lineBuilder(200L, second, 2));
+        savedLines.add(lineBuilder(100L, first, 1));
+        saved.setProductPurchases(savedLines);
+        when(purchaseService.save(purchase)).thenReturn(saved);
+
+        cartStoreService.flush(purchase);
+
+        assertThat(purchase.getId()).isEqualTo(10L);
+        assertThat(purchase.findProductPurchase(1L).getProductPurchaseId()).isEqualTo(100L);
+        assertThat(purchase.findProductPurchase(2L).getProductPurchaseId()).isEqualTo(200L);
+    }
+
+    @Test
+    public void pendingCartsAreWrittenOnScheduleAndOnShutdown() throws Exception {
+        assertThat(CartStoreServiceImpl.class.getMethod("flushAll").isAnnotationPresent(Scheduled.class)).isTrue();
+        assertThat(CartStoreServiceImpl.class.getMethod("flushAll").isAnnotationPresent(PreDestroy.class)).isTrue();
+    }
+
+    private Purchase purchaseBuilder() {
+        return new Purchase();
+    }
+
+    private Product productBuilder(long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("product " + id);
+        product.setPrice(BigDecimal.ONE);
+        product.setQuantity(10);
+        return product;
+    }
+
+    private ProductPurchase lineBuilder(long id, Product product, int quantity) {
+        ProductPurchase line = new ProductPurchase();
+        line.setProductPurchaseId(id);
+        line.setProduct(product);
+        line.setQuantity(quantity);
+        return line;
+    }
+}
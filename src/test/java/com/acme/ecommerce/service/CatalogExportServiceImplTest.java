@@ -0,0 +1,72 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.service.CatalogImportService.Format;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CatalogExportServiceImplTest {
+
+    @Test
+    public void plainValuesAreNotQuoted() {
+        assertThat(CatalogExportServiceImpl.csv("Red Shoe")).isEqualTo("Red Shoe");
+        assertThat(CatalogExportServiceImpl.csv("")).isEqualTo("");
+    }
+
+    @Test
+    public void missingValueIsAnEmptyField() {
+        assertThat(CatalogExportServiceImpl.csv(null)).isEqualTo("");
+    }
+
+    @Test
+    public void separatorsQuotesAndLineBreaksAreQuoted() {
+        assertThat(CatalogExportServiceImpl.csv("Big, shiny")).isEqualTo("\"Big, shiny\"");
+        assertThat(CatalogExportServiceImpl.csv("6\" nail")).isEqualTo("\"6\"\" nail\"");
+        assertThat(CatalogExportServiceImpl.csv("two\nlines")).isEqualTo("\"two\nlines\"");
+        assertThat(CatalogExportServiceImpl.csv("two\r\nlines")).isEqualTo("\"two\r\nlines\"");
+    }
+
+    @Test
+    public void importerParsesWhatIsWritten() {
+        String[] values = {"Red Shoe", "Big, \"shiny\"", "two\nlines", "", "\"\""};
+        StringBuilder record = new StringBuilder();
+        for (String value : values) {
+            record.append(record.length() == 0 ? "" : ",").append(CatalogExportServiceImpl.csv(value));
+        }
+
+        assertThat(CatalogImportServiceImpl.parseCsv(record.toString())).containsExactly(values);
+    }
+
+    @Test
+    public void productWithMissingValuesIsWrittenWithEmptyFields() throws Exception {
+        assertThat(export(Format.CSV)).isEqualTo(
+                "product_id,name,desc,thumb_image_name,full_image_name,price,quantity\n"
+                        + "7,Red Shoe,,,,,\n");
+        assertThat(export(Format.NDJSON)).isEqualTo(
+                "{\"product_id\":7,\"name\":\"Red Shoe\",\"desc\":null,\"thumb_image_name\":null,"
+                        + "\"full_image_name\":null,\"price\":null,\"quantity\":null}\n");
+    }
+
+    private static String export(Format format) throws Exception {
+        Product product = new Product();
+        product.setId(7L);
+        product.setName("Red Shoe");
+        ProductRepository repository = mock(ProductRepository.class);
+        when(repository.streamAll()).thenReturn(Stream.of(product));
+        CatalogExportServiceImpl exporter = new CatalogExportServiceImpl(repository);
+        ReflectionTestUtils.setField(exporter, "entityManager", mock(EntityManager.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(exporter.export(out, format)).isEqualTo(1);
+        return out.toString("UTF-8");
+    }
+}
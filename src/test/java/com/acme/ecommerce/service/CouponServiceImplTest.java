@@ -0,0 +1,212 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Coupon;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.CouponRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+public class CouponServiceImplTest {
+
+    @Mock
+    private CouponRepository couponRepository;
+
+    private CouponServiceImpl couponService;
+    private Purchase purchase;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(couponRepository.findAll()).thenReturn(Arrays.asList(
+                couponBuilder("SAVE10", Coupon.DiscountType.PERCENT, "10"),
+                couponBuilder("OFF5", Coupon.DiscountType.AMOUNT, "5.00"),
+                productCoupon("FORK20", Coupon.DiscountType.PERCENT, "20", 2L, null),
+                productCoupon("FROGS3", Coupon.DiscountType.AMOUNT, "3.00", 3L, 2),
+                productCoupon("HUGE9", Coupon.DiscountType.AMOUNT, "9.00", 3L, null),
+                minSubTotalCoupon("BIG25", "25.00", "50.00"),
+                inactive(couponBuilder("GONE50", Coupon.DiscountType.PERCENT, "50")),
+                stackable(couponBuilder("STACK1", Coupon.DiscountType.AMOUNT, "1.00")),
+                stackable(couponBuilder("STACK2", Coupon.DiscountType.AMOUNT, "2.00")),
+                stackable(couponBuilder("STACK9", Coupon.DiscountType.AMOUNT, "9.00"))));
+        couponService = new CouponServiceImpl(couponRepository);
+        couponService.refresh();
+
+        // 1 x 10.00, 2 x 5.00, 3 x 4.00: 32.00 in all
+        purchase = new Purchase();
+        purchase.addProductPurchase(productBuilder(1L, "10.00"), 1);
+        purchase.addProductPurchase(productBuilder(2L, "5.00"), 2);
+        purchase.addProductPurchase(productBuilder(3L, "4.00"), 3);
+    }
+
+    @Test
+    public void percentCouponTakesAShareOfTheSubtotal() {
+        assertThat(couponService.discount(purchase, 3200L, "SAVE10")).isEqualTo(320L);
+    }
+
+    @Test
+    public void amountCouponTakesAFixedSumOff() {
+        assertThat(couponService.discount(purchase, 3200L, "OFF5")).isEqualTo(500L);
+    }
+
+    @Test
+    public void productCouponOnlyCountsItsOwnLine() {
+        assertThat(couponService.discount(purchase, 3200L, "FORK20")).isEqualTo(200L);
+
+        purchase.removeProductPurchase(2L);
+        assertThat(couponService.discount(purchase, 2200L, "FORK20")).isEqualTo(0L);
+    }
+
+    @Test
+    public void productAmountComesOffEachUnitAboveTheMinimumQuantity() {
+        assertThat(couponService.discount(purchase, 3200L, "FROGS3")).isEqualTo(900L);
+
+        purchase.updateProductPurchase(3L, 1);
+        assertThat(couponService.discount(purchase, 2400L, "FROGS3")).isEqualTo(0L);
+    }
+
+    @Test
+    public void productAmountIsCappedAtTheLine() {
+        assertThat(couponService.discount(purchase, 3200L, "HUGE9")).isEqualTo(1200L);
+    }
+
+    @Test
+    public void minimumSubtotalIsInclusive() {
+        assertThat(couponService.discount(purchase, 4999L, "BIG25")).isEqualTo(0L);
+        assertThat(couponService.discount(purchase, 5000L, "BIG25")).isEqualTo(2500L);
+    }
+
+    @Test
+    public void onlyTheBestSingleCouponCounts() {
+        assertThat(couponService.discount(purchase, 3200L, "SAVE10", "OFF5", "FORK20")).isEqualTo(500L);
+    }
+
+    @Test
+    public void stackableCouponsAddUp() {
+        assertThat(couponService.discount(purchase, 3200L, "STACK1", "STACK2")).isEqualTo(300L);
+    }
+
+    @Test
+    public void betterOfStackedAndSingleWins() {
+        assertThat(couponService.discount(purchase, 3200L, "STACK1", "STACK2", "OFF5")).isEqualTo(500L);
+        assertThat(couponService.discount(purchase, 3200L, "STACK2", "STACK9", "OFF5")).isEqualTo(1100L);
+    }
+
+    @Test
+    public void codeEnteredTwiceCountsOnce() {
+        assertThat(couponService.discount(purchase, 3200L, "STACK2", "stack2", " STACK2 ")).isEqualTo(200L);
+    }
+
+    @Test
+    public void discountNeverExceedsTheSubtotal() {
+        assertThat(couponService.discount(purchase, 800L, "STACK9")).isEqualTo(800L);
+        assertThat(couponService.discount(purchase, 1000L, "STACK2", "STACK9")).isEqualTo(1000L);
+    }
+
+    @Test
+    public void unknownAndInactiveCodesAreIgnored() {
+        assertThat(couponService.isValid("GONE50")).isFalse();
+        assertThat(couponService.isValid("NOPE1")).isFalse();
+        assertThat(couponService.isValid(" save10 ")).isTrue();
+        assertThat(couponService.discount(purchase, 3200L, "GONE50", "NOPE1", "", null)).isEqualTo(0L);
+        assertThat(couponService.discount(purchase, 3200L)).isEqualTo(0L);
+    }
+
+    @Test
+    public void renamedOrDeactivatedCodeStopsRedeeming() {
+        Coupon save = withId(1L, couponBuilder("SAVE10", Coupon.DiscountType.PERCENT, "10"));
+        Coupon off = withId(2L, couponBuilder("OFF5", Coupon.DiscountType.AMOUNT, "5.00"));
+        when(couponRepository.findAll()).thenReturn(Arrays.asList(save, off));
+        couponService = new CouponServiceImpl(couponRepository);
+        couponService.refresh();
+
+        Coupon renamed = withId(1L, couponBuilder("SAVE15", Coupon.DiscountType.PERCENT, "15"));
+        renamed.setUpdatedAt(new Date(1000));
+        Coupon deactivated = inactive(withId(2L, couponBuilder("OFF5", Coupon.DiscountType.AMOUNT, "5.00")));
+        deactivated.setUpdatedAt(new Date(1000));
+        when(couponRepository.findByUpdatedAtGreaterThanEqual(any(Date.class)))
+                .thenReturn(Arrays.asList(renamed, deactivated));
+        couponService.refresh();
+
+        assertThat(couponService.isValid("SAVE10")).isFalse();
+        assertThat(couponService.isValid("OFF5")).isFalse();
+        assertThat(couponService.discount(purchase, 3200L, "SAVE15")).isEqualTo(480L);
+    }
+
+    @Test
+    public void codeTakenOverByAnotherCouponStaysWithIt() {
+        Coupon first = withId(1L, couponBuilder("SAVE10", Coupon.DiscountType.PERCENT, "10"));
+        when(couponRepository.findAll()).thenReturn(Arrays.asList(first));
+        couponService = new CouponServiceImpl(couponRepository);
+        couponService.refresh();
+
+        // the new row claims the code before the old one is renamed
+        Coupon second = withId(2L, couponBuilder("SAVE10", Coupon.DiscountType.AMOUNT, "1.00"));
+        Coupon renamed = withId(1L, couponBuilder("OLD10", Coupon.DiscountType.PERCENT, "10"));
+        when(couponRepository.findByUpdatedAtGreaterThanEqual(any(Date.class)))
+                .thenReturn(Arrays.asList(second, renamed));
+        couponService.refresh();
+
+        assertThat(couponService.discount(purchase, 3200L, "SAVE10")).isEqualTo(100L);
+        assertThat(couponService.discount(purchase, 3200L, "OLD10")).isEqualTo(320L);
+    }
+
+    private static Coupon withId(long id, Coupon coupon) {
+        coupon.setId(id);
+        return coupon;
+    }
+
+    private static Coupon couponBuilder(String code, Coupon.DiscountType type, String discount) {
+        Coupon coupon = new Coupon();
+        coupon.setCode(code);
+        coupon.setDiscountType(type);
+        coupon.setDiscount(new BigDecimal(discount));
+        coupon.setActive(true);
+        coupon.setStackable(false);
+        coupon.setUpdatedAt(new Date(0));
+        return coupon;
+    }
+
+    private static Coupon productCoupon(String code, Coupon.DiscountType type, String discount,
+                                        Long productId, Integer minQuantity) {
+        Coupon coupon = couponBuilder(code, type, discount);
+        coupon.setProductId(productId);
+        coupon.setMinQuantity(minQuantity);
+        return coupon;
+    }
+
+    private static Coupon minSubTotalCoupon(String code, String discount, String minSubTotal) {
+        Coupon coupon = couponBuilder(code, Coupon.DiscountType.AMOUNT, discount);
+        coupon.setMinSubTotal(new BigDecimal(minSubTotal));
+        return coupon;
+    }
+
+    private static Coupon stackable(Coupon coupon) {
+        coupon.setStackable(true);
+        return coupon;
+    }
+
+    private static Coupon inactive(Coupon coupon) {
+        coupon.setActive(false);
+        return coupon;
+    }
+
+    private static Product productBuilder(long id, String price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("product " + id);
+        product.setPrice(new BigDecimal(price));
+        product.setQuantity(100);
+        return product;
+    }
+}
@@ -0,0 +1,81 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductImage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImageServiceImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ImageServiceImpl imageService;
+    private Product product;
+    private File image;
+
+    @Before
+    public void setup() throws Exception {
+        imageService = new ImageServiceImpl();
+        ReflectionTestUtils.setField(imageService, "imagePath", folder.getRoot().getPath());
+        product = new Product();
+        product.setId(1L);
+        product.setFullImageName("shoe.png");
+        image = write("first", 1000000000000L);
+    }
+
+    @Test
+    public void unchangedFileKeepsItsEntry() throws Exception {
+        ProductImage first = imageService.findImage(product);
+
+        assertThat(imageService.findImage(product)).isSameAs(first);
+        assertThat(first.getLength()).isEqualTo(5);
+    }
+
+    @Test
+    public void replacedFileIsHashedAgain() throws Exception {
+        ProductImage first = imageService.findImage(product);
+
+        write("second version", 1000000005000L);
+        ProductImage second = imageService.findImage(product);
+
+        assertThat(second.getLength()).isEqualTo(14);
+        assertThat(second.getLastModified()).isEqualTo(1000000005000L);
+        assertThat(second.getETag()).isNotEqualTo(first.getETag());
+        assertThat(imageService.fingerprint(product)).isEqualTo(second.getFingerprint());
+    }
+
+    @Test
+    public void sameSizeSameTimeIsTakenAsUnchanged() throws Exception {
+        ProductImage first = imageService.findImage(product);
+
+        write("other", 1000000000000L);
+
+        assertThat(imageService.findImage(product)).isSameAs(first);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void deletedFileIsNotFound() throws Exception {
+        imageService.findImage(product);
+        assertThat(image.delete()).isTrue();
+
+        imageService.findImage(product);
+    }
+
+    private File write(String content, long lastModified) throws Exception {
+        File file = new File(folder.getRoot(), "shoe.png");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        assertThat(file.setLastModified(lastModified)).isTrue();
+        return file;
+    }
+}
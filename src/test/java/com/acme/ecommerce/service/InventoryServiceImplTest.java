@@ -0,0 +1,243 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.OrderQuantityGreaterThanStockException;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.Purchase;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InventoryServiceImplTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private Cache productRegion;
+    private org.hibernate.Cache hibernateCache;
+    private InventoryServiceImpl inventoryService;
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table product (product_id bigint primary key, quantity int not null)");
+        jdbcTemplate.update("insert into product values (1, 10), (2, 5)");
+
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        productRegion = mock(Cache.class);
+        when(entityManagerFactory.getCache()).thenReturn(productRegion);
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        hibernateCache = mock(org.hibernate.Cache.class);
+        when(sessionFactory.getCache()).thenReturn(hibernateCache);
+        when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+
+        inventoryService = new InventoryServiceImpl(database, entityManagerFactory);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void reserveOverAvailableStockIsRejected() {
+        Product product = productBuilder(1L, 10);
+        inventoryService.reserve(product, 8);
+
+        try {
+            inventoryService.reserve(product, 3);
+            fail("reserved more than is in stock");
+        } catch (OrderQuantityGreaterThanStockException ex) {
+            assertThat(ex.getMessage()).contains("only 2 of");
+        }
+        assertThat(inventoryService.available(product)).isEqualTo(2);
+    }
+
+    @Test
+    public void releaseRestoresStock() {
+        Product product = productBuilder(1L, 10);
+        inventoryService.reserve(product, 4);
+
+        inventoryService.release(product, 3);
+
+        assertThat(inventoryService.available(product)).isEqualTo(9);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasingMoreThanIsReservedIsRejected() {
+        Product product = productBuilder(1L, 10);
+        inventoryService.reserve(product, 2);
+
+        inventoryService.release(product, 3);
+    }
+
+    @Test
+    public void commitDecrementsOnHand() {
+        Product product = productBuilder(1L, 10);
+        inventoryService.reserve(product, 4);
+
+        inventoryService.commit(purchaseBuilder(product, 4));
+
+        assertThat(inventoryService.available(product)).isEqualTo(6);
+        // the reservation became the sale, releasing it again is a bug
+        try {
+            inventoryService.release(product, 1);
+            fail("released a committed reservation");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void commitWithoutReservationPutsEarlierLinesBack() {
+        Product reserved = productBuilder(1L, 10);
+        Product unreserved = productBuilder(2L, 5);
+        inventoryService.reserve(reserved, 3);
+        Purchase purchase = purchaseBuilder(reserved, 3);
+        purchase.addProductPurchase(unreserved, 2);
+
+        try {
+            inventoryService.commit(purchase);
+            fail("committed a line that was never reserved");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(inventoryService.available(reserved)).isEqualTo(7);
+        inventoryService.flush();
+        assertThat(quantityOf(1L)).isEqualTo(10);
+    }
+
+    @Test
+    public void concurrentReservesNeverOversell() throws Exception {
+        final Product product = productBuilder(1L, 1000);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    int reserved = 0;
+                    for (int i = 0; i < 500; i++) {
+                        try {
+                            inventoryService.reserve(product, 1);
+                            reserved++;
+                        } catch (OrderQuantityGreaterThanStockException ex) {
+                            // sold out
+                        }
+                    }
+                    return reserved;
+                }
+            }));
+        }
+        start.countDown();
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(total).isEqualTo(1000);
+        assertThat(inventoryService.available(product)).isEqualTo(0);
+    }
+
+    @Test
+    public void flushWritesTheBatchAndEvictsTheRows() {
+        Product first = productBuilder(1L, 10);
+        Product second = productBuilder(2L, 5);
+        inventoryService.reserve(first, 3);
+        inventoryService.reserve(second, 5);
+        Purchase purchase = purchaseBuilder(first, 3);
+        purchase.addProductPurchase(second, 5);
+        inventoryService.commit(purchase);
+
+        inventoryService.flush();
+
+        assertThat(quantityOf(1L)).isEqualTo(7);
+        assertThat(quantityOf(2L)).isEqualTo(0);
+        verify(productRegion).evict(Product.class, 1L);
+        verify(productRegion).evict(Product.class, 2L);
+    }
+
+    @Test
+    public void reservationsSurviveACatalogImport() {
+        Product product = productBuilder(1L, 10);
+        inventoryService.reserve(product, 4);
+
+        inventoryService.catalogImported(new CatalogImportedEvent(null));
+        verify(productRegion).evict(Product.class);
+        verify(hibernateCache).evictQueryRegions();
+
+        // the supplier's new count, less what the carts still hold
+        Product imported = productBuilder(1L, 20);
+        assertThat(inventoryService.available(imported)).isEqualTo(16);
+        inventoryService.release(imported, 4);
+        assertThat(inventoryService.available(imported)).isEqualTo(20);
+    }
+
+    @Test
+    public void editedQuantityReplacesTheCountKeepingReservations() {
+        Product product = productBuilder(1L, 10);
+        inventoryService.reserve(product, 4);
+        inventoryService.commit(purchaseBuilder(product, 1));
+        inventoryService.reserve(product, 2);
+
+        inventoryService.restock(productBuilder(1L, 30));
+
+        // the 5 reserved are still held, and the old count of 9 is never written back
+        assertThat(inventoryService.available(product)).isEqualTo(25);
+        inventoryService.flush();
+        assertThat(quantityOf(1L)).isEqualTo(10);
+        inventoryService.release(product, 5);
+        assertThat(inventoryService.available(product)).isEqualTo(30);
+    }
+
+    @Test
+    public void restockOfAnUncountedProductLeavesItToBeSeeded() {
+        inventoryService.restock(productBuilder(2L, 7));
+
+        assertThat(inventoryService.available(productBuilder(2L, 7))).isEqualTo(7);
+    }
+
+    private int quantityOf(long id) {
+        return jdbcTemplate.queryForObject("select quantity from product where product_id = ?", Integer.class, id);
+    }
+
+    private Product productBuilder(long id, int quantity) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("product " + id);
+        product.setPrice(BigDecimal.ONE);
+        product.setQuantity(quantity);
+        return product;
+    }
+
+    private Purchase purchaseBuilder(Product product, int quantity) {
+        Purchase purchase = new Purchase();
+        purchase.addProductPurchase(product, quantity);
+        return purchase;
+    }
+}
@@ -0,0 +1,219 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.repository.PurchaseRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.acme.ecommerce.service.OrderNumberServiceImpl.EPOCH;
+import static com.acme.ecommerce.service.OrderNumberServiceImpl.MAX_NODE_ID;
+import static com.acme.ecommerce.service.OrderNumberServiceImpl.NODE_BITS;
+import static com.acme.ecommerce.service.OrderNumberServiceImpl.SEQUENCE_BITS;
+import static com.acme.ecommerce.service.OrderNumberServiceImpl.SEQUENCE_MASK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class OrderNumberServiceImplTest {
+
+    private static final long NOW = EPOCH + 1000000;
+    private static final long NODE = 5;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    private ManualClock clock;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        clock = new ManualClock(NOW);
+    }
+
+    @Test
+    public void idsAreUniqueAndIncreasingInEveryThread() throws Exception {
+        final OrderNumberServiceImpl orderNumbers =
+                new OrderNumberServiceImpl(NODE, 64, purchaseRepository, Clock.systemUTC());
+        final int threads = 8;
+        final int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() {
+                        long[] ids = new long[perThread];
+                        for (int i = 0; i < perThread; i++) {
+                            ids[i] = orderNumbers.nextId();
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            Set<Long> seen = new HashSet<Long>();
+            for (Future<long[]> result : results) {
+                long[] ids = result.get();
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0) {
+                        assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+                    }
+                    assertThat(nodeOf(ids[i])).isEqualTo(NODE);
+                    seen.add(ids[i]);
+                }
+            }
+            assertThat(seen).hasSize(threads * perThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fullMillisecondBorrowsFromTheNext() {
+        OrderNumberServiceImpl orderNumbers = new OrderNumberServiceImpl(NODE, 64, purchaseRepository, clock);
+
+        long previous = orderNumbers.nextId();
+        assertThat(millisOf(previous)).isEqualTo(NOW);
+        assertThat(sequenceOf(previous)).isEqualTo(0);
+        for (int i = 1; i <= SEQUENCE_MASK + 1; i++) {
+            long id = orderNumbers.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+
+        assertThat(millisOf(previous)).isEqualTo(NOW + 1);
+        assertThat(sequenceOf(previous)).isEqualTo(0);
+    }
+
+    @Test
+    public void clockSteppingBackKeepsIdsIncreasing() {
+        OrderNumberServiceImpl orderNumbers = new OrderNumberServiceImpl(NODE, 1, purchaseRepository, clock);
+        long before = orderNumbers.nextId();
+
+        clock.advance(-10000);
+        long after = orderNumbers.nextId();
+
+        assertThat(after).isGreaterThan(before);
+        assertThat(millisOf(after)).isEqualTo(NOW);
+        assertThat(sequenceOf(after)).isEqualTo(1);
+    }
+
+    @Test
+    public void idleThreadDropsItsBlockAfterASecond() {
+        OrderNumberServiceImpl orderNumbers = new OrderNumberServiceImpl(NODE, 64, purchaseRepository, clock);
+        orderNumbers.nextId();
+
+        clock.advance(500);
+        assertThat(millisOf(orderNumbers.nextId())).isEqualTo(NOW);
+
+        clock.advance(501);
+        assertThat(millisOf(orderNumbers.nextId())).isEqualTo(NOW + 1001);
+    }
+
+    @Test
+    public void restartResumesAfterTheHighestSavedOrderId() {
+        // borrowed ids issued by the previous run, five seconds ahead of the clock, on another node
+        long saved = idOf(NOW + 5000, 3, 7);
+        when(purchaseRepository.findMaxOrderId()).thenReturn(saved);
+        OrderNumberServiceImpl orderNumbers = new OrderNumberServiceImpl(NODE, 64, purchaseRepository, clock);
+
+        orderNumbers.resume();
+        long id = orderNumbers.nextId();
+
+        assertThat(id).isGreaterThan(saved);
+        assertThat(millisOf(id)).isEqualTo(NOW + 5000);
+        assertThat(sequenceOf(id)).isEqualTo(8);
+        assertThat(nodeOf(id)).isEqualTo(NODE);
+    }
+
+    @Test
+    public void olderSavedOrderIdsDoNotHoldTheClockBack() {
+        when(purchaseRepository.findMaxOrderId()).thenReturn(idOf(NOW - 60000, NODE, 0));
+        OrderNumberServiceImpl orderNumbers = new OrderNumberServiceImpl(NODE, 64, purchaseRepository, clock);
+
+        orderNumbers.resume();
+
+        assertThat(millisOf(orderNumbers.nextId())).isEqualTo(NOW);
+    }
+
+    @Test
+    public void emptyOrderTableStartsFromTheClock() {
+        when(purchaseRepository.findMaxOrderId()).thenReturn(null);
+        OrderNumberServiceImpl orderNumbers = new OrderNumberServiceImpl(NODE, 64, purchaseRepository, clock);
+
+        orderNumbers.resume();
+
+        assertThat(orderNumbers.nextOrderNumber()).isEqualTo(Long.toString(idOf(NOW, NODE, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodeIdMustFitItsBits() {
+        new OrderNumberServiceImpl(MAX_NODE_ID + 1, 64, purchaseRepository, clock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blockMustFitInAMillisecond() {
+        new OrderNumberServiceImpl(NODE, (int) SEQUENCE_MASK + 2, purchaseRepository, clock);
+    }
+
+    private static long idOf(long millis, long node, long sequence) {
+        return (millis - EPOCH) << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | sequence;
+    }
+
+    private static long millisOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    private static long nodeOf(long id) {
+        return id >>> SEQUENCE_BITS & MAX_NODE_ID;
+    }
+
+    private static long sequenceOf(long id) {
+        return id & SEQUENCE_MASK;
+    }
+
+    private static class ManualClock extends Clock {
+        private long millis;
+
+        ManualClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
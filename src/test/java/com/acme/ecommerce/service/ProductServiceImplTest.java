@@ -0,0 +1,186 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPage;
+import com.acme.ecommerce.repository.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProductServiceImplTest {
+
+    private static final int SIZE = 4;
+
+    @Mock
+    private ProductRepository repository;
+    @Mock
+    private SearchService searchService;
+    @Mock
+    private InventoryService inventoryService;
+
+    private ProductServiceImpl productService;
+    private final List<Product> catalog = new ArrayList<Product>();
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        // the repository's seeks, over whatever the catalog holds
+        when(repository.findAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long after = (Long) invocation.getArguments()[0];
+            int limit = ((Pageable) invocation.getArguments()[1]).getPageSize();
+            return catalog.stream().filter(p -> p.getId() > after).limit(limit).collect(Collectors.toList());
+        });
+        when(repository.findBefore(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long before = (Long) invocation.getArguments()[0];
+            int limit = ((Pageable) invocation.getArguments()[1]).getPageSize();
+            List<Product> products = catalog.stream().filter(p -> p.getId() < before).collect(Collectors.toList());
+            List<Product> newestFirst = new ArrayList<Product>();
+            for (int i = products.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+                newestFirst.add(products.get(i));
+            }
+            return newestFirst;
+        });
+        when(repository.countCached()).thenAnswer(invocation -> (long) catalog.size());
+        productService = new ProductServiceImpl(repository, searchService, inventoryService);
+
+        // 11 products with gaps in the ids: pages of 4, 4 and 3
+        catalogOf(1, 2, 4, 5, 7, 8, 10, 13, 14, 20, 21);
+    }
+
+    @Test
+    public void firstPageHasOnlyANextPage() {
+        ProductPage page = productService.findPageAfter(null, 0, SIZE);
+
+        assertThat(ids(page)).containsExactly(1L, 2L, 4L, 5L);
+        assertThat(page.getNumber()).isEqualTo(0);
+        assertThat(page.hasPrevious()).isFalse();
+        assertThat(page.hasNext()).isTrue();
+        assertThat(page.getTotalElements()).isEqualTo(11);
+        assertThat(page.getTotalPages()).isEqualTo(3);
+    }
+
+    @Test
+    public void walkingForwardSeeksPastTheLastId() {
+        ProductPage second = productService.findPageAfter(5L, 1, SIZE);
+        assertThat(ids(second)).containsExactly(7L, 8L, 10L, 13L);
+        assertThat(second.getNumber()).isEqualTo(1);
+        assertThat(second.hasPrevious()).isTrue();
+        assertThat(second.hasNext()).isTrue();
+
+        ProductPage third = productService.findPageAfter(second.getLastId(), 2, SIZE);
+        assertThat(ids(third)).containsExactly(14L, 20L, 21L);
+        assertThat(third.getNumber()).isEqualTo(2);
+        assertThat(third.hasPrevious()).isTrue();
+        assertThat(third.hasNext()).isFalse();
+    }
+
+    @Test
+    public void cursorInAGapStartsAtTheNextId() {
+        ProductPage page = productService.findPageAfter(6L, 1, SIZE);
+
+        assertThat(ids(page)).containsExactly(7L, 8L, 10L, 13L);
+    }
+
+    @Test
+    public void lastPageHoldsTheRemainder() {
+        ProductPage page = productService.findPageBefore(null, 0, SIZE);
+
+        assertThat(ids(page)).containsExactly(14L, 20L, 21L);
+        assertThat(page.getNumber()).isEqualTo(2);
+        assertThat(page.hasPrevious()).isTrue();
+        assertThat(page.hasNext()).isFalse();
+    }
+
+    @Test
+    public void walkingBackLinesUpWithTheFirstPage() {
+        ProductPage last = productService.findPageBefore(null, 0, SIZE);
+
+        ProductPage second = productService.findPageBefore(last.getFirstId(), last.getNumber() - 1, SIZE);
+        assertThat(ids(second)).containsExactly(7L, 8L, 10L, 13L);
+        assertThat(second.getNumber()).isEqualTo(1);
+        assertThat(second.hasPrevious()).isTrue();
+        assertThat(second.hasNext()).isTrue();
+
+        ProductPage first = productService.findPageBefore(second.getFirstId(), second.getNumber() - 1, SIZE);
+        assertThat(ids(first)).containsExactly(1L, 2L, 4L, 5L);
+        assertThat(first.getNumber()).isEqualTo(0);
+        assertThat(first.hasPrevious()).isFalse();
+        assertThat(first.hasNext()).isTrue();
+    }
+
+    @Test
+    public void reachingTheStartResetsAStalePageNumber() {
+        ProductPage page = productService.findPageBefore(7L, 5, SIZE);
+
+        assertThat(ids(page)).containsExactly(1L, 2L, 4L, 5L);
+        assertThat(page.getNumber()).isEqualTo(0);
+        assertThat(page.hasPrevious()).isFalse();
+    }
+
+    @Test
+    public void lastPageOfAnExactMultipleIsFull() {
+        catalog.clear();
+        catalogOf(3, 6, 9, 12, 15, 18, 21, 24);
+
+        ProductPage page = productService.findPageBefore(null, 0, SIZE);
+
+        assertThat(ids(page)).containsExactly(15L, 18L, 21L, 24L);
+        assertThat(page.getNumber()).isEqualTo(1);
+        assertThat(page.hasPrevious()).isTrue();
+        assertThat(productService.findPageAfter(12L, 1, SIZE).hasNext()).isFalse();
+    }
+
+    @Test
+    public void emptyCatalogIsASinglePage() {
+        catalog.clear();
+
+        ProductPage first = productService.findPageAfter(null, 0, SIZE);
+        ProductPage last = productService.findPageBefore(null, 0, SIZE);
+
+        assertThat(first.getContent()).isEmpty();
+        assertThat(first.hasNext()).isFalse();
+        assertThat(last.getContent()).isEmpty();
+        assertThat(last.getNumber()).isEqualTo(0);
+        assertThat(last.hasPrevious()).isFalse();
+        assertThat(last.getTotalPages()).isEqualTo(1);
+    }
+
+    @Test
+    public void savedQuantityReplacesTheCountedStock() {
+        Product product = catalog.get(0);
+        when(repository.save(product)).thenReturn(product);
+
+        productService.save(product);
+
+        verify(inventoryService).restock(product);
+        verify(searchService).index(product);
+    }
+
+    private void catalogOf(long... ids) {
+        for (long id : ids) {
+            Product product = new Product();
+            product.setId(id);
+            product.setName("product " + id);
+            product.setPrice(BigDecimal.ONE);
+            product.setQuantity(5);
+            catalog.add(product);
+        }
+    }
+
+    private static List<Long> ids(ProductPage page) {
+        return page.getContent().stream().map(Product::getId).collect(Collectors.toList());
+    }
+}
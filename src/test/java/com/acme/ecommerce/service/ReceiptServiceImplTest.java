@@ -0,0 +1,161 @@
+package com.acme.ecommerce.service;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ReceiptServiceImplTest {
+
+    private static final long RETENTION = 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TemplateEngine templateEngine;
+    private File spoolDir;
+
+    @Before
+    public void setup() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("receipts/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode("HTML5");
+        templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        spoolDir = new File(folder.getRoot(), "spool");
+    }
+
+    @Test
+    public void receiptIsRenderedIntoTheSpool() throws Exception {
+        ReceiptServiceImpl receiptService = receiptService(new TaskExecutorAdapter(Runnable::run));
+
+        File receipt = receiptService.findReceipt("1234", variables("1234")).get();
+
+        assertThat(receipt.getParentFile()).isEqualTo(spoolDir);
+        assertThat(new String(Files.readAllBytes(receipt.toPath()), StandardCharsets.UTF_8))
+                .contains("Your order number is 1234.");
+        assertThat(spoolDir.list()).containsExactly(receipt.getName());
+        assertThat(receiptService.getRenderCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void spoolIsOnlyReadableByItsOwner() throws Exception {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        ReceiptServiceImpl receiptService = receiptService(new TaskExecutorAdapter(Runnable::run));
+
+        File receipt = receiptService.findReceipt("1234", variables("1234")).get();
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(spoolDir.toPath())))
+                .isEqualTo("rwx------");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(receipt.toPath())))
+                .isEqualTo("rw-------");
+    }
+
+    @Test
+    public void spooledReceiptIsServedWithoutRendering() throws Exception {
+        ReceiptServiceImpl receiptService = receiptService(new TaskExecutorAdapter(Runnable::run));
+        File rendered = receiptService.findReceipt("1234", variables("1234")).get();
+
+        assertThat(receiptService.findReceipt("1234", null).get()).isEqualTo(rendered);
+        assertThat(receiptService.findReceipt("1234", variables("1234")).get()).isEqualTo(rendered);
+        assertThat(receiptService.getRenderCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void renderUnderWayIsShared() throws Exception {
+        List<Runnable> queued = new ArrayList<Runnable>();
+        ReceiptServiceImpl receiptService = receiptService(new TaskExecutorAdapter(queued::add));
+
+        ListenableFuture<File> first = receiptService.findReceipt("1234", variables("1234"));
+        ListenableFuture<File> second = receiptService.findReceipt("1234", variables("1234"));
+        assertThat(second).isSameAs(first);
+        assertThat(queued).hasSize(1);
+
+        queued.get(0).run();
+        assertThat(first.get()).isFile();
+        assertThat(receiptService.getRenderCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void unknownReceiptWithoutVariablesIsNotFound() throws Exception {
+        ReceiptServiceImpl receiptService = receiptService(new TaskExecutorAdapter(Runnable::run));
+
+        assertFailsWith(receiptService.findReceipt("1234", null), FileNotFoundException.class);
+        assertFailsWith(receiptService.findReceipt("../1234", variables("1234")), IllegalArgumentException.class);
+    }
+
+    @Test
+    public void fullQueueFailsTheRequestAndALaterOneRenders() throws Exception {
+        AsyncListenableTaskExecutor executor = mock(AsyncListenableTaskExecutor.class);
+        doAnswer(invocation -> {
+            throw new TaskRejectedException("queue full");
+        }).doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        ReceiptServiceImpl receiptService = receiptService(executor);
+
+        assertFailsWith(receiptService.findReceipt("1234", variables("1234")), TaskRejectedException.class);
+        assertThat(spoolDir.list()).isEmpty();
+
+        assertThat(receiptService.findReceipt("1234", variables("1234")).get()).isFile();
+    }
+
+    @Test
+    public void purgeRemovesReceiptsPastTheirRetention() throws Exception {
+        ReceiptServiceImpl receiptService = receiptService(new TaskExecutorAdapter(Runnable::run));
+        File old = receiptService.findReceipt("1111", variables("1111")).get();
+        File recent = receiptService.findReceipt("2222", variables("2222")).get();
+        assertThat(old.setLastModified(System.currentTimeMillis() - RETENTION - 1000)).isTrue();
+
+        receiptService.purge();
+
+        assertThat(old).doesNotExist();
+        assertThat(recent).isFile();
+        assertFailsWith(receiptService.findReceipt("1111", null), FileNotFoundException.class);
+    }
+
+    private ReceiptServiceImpl receiptService(AsyncListenableTaskExecutor executor) {
+        return new ReceiptServiceImpl(templateEngine, executor, spoolDir.getPath(), RETENTION);
+    }
+
+    private static Map<String, Object> variables(String orderNumber) {
+        return Collections.<String, Object>singletonMap("orderNumber", orderNumber);
+    }
+
+    private static void assertFailsWith(ListenableFuture<File> future, Class<? extends Exception> type)
+            throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected " + type.getSimpleName());
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(type);
+        }
+    }
+}
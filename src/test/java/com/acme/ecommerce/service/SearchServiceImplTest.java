@@ -0,0 +1,198 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.repository.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.when;
+
+public class SearchServiceImplTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private SearchServiceImpl searchService;
+    // the rows the repository serves, results are looked up here by id
+    private final Map<Long, Product> rows = new HashMap<Long, Product>();
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(productRepository.findOne(anyLong())).thenAnswer(invocation -> rows.get(invocation.getArguments()[0]));
+        when(productRepository.findAll()).thenReturn(Arrays.asList(
+                productBuilder(1L, "Red Shoe", "A comfortable running shoe"),
+                productBuilder(2L, "Blue Shirt", "Cotton shirt, red buttons"),
+                productBuilder(3L, "Red Shirt", "Cotton shirt"),
+                productBuilder(4L, "Shorts", "Running shorts in red"),
+                productBuilder(5L, "Socks", "Wool"),
+                productBuilder(6L, "Sock", "Wool")));
+        searchService = new SearchServiceImpl(productRepository);
+        searchService.rebuild();
+    }
+
+    @Test
+    public void nameHitsRankAboveDescriptionHits() {
+        assertThat(ids(searchService.search("red", 10))).containsExactly(1L, 3L, 2L, 4L);
+    }
+
+    @Test
+    public void everyWordHasToMatch() {
+        assertThat(ids(searchService.search("red shirt", 10))).containsExactly(3L, 2L);
+        assertThat(ids(searchService.search("RED, cotton!", 10))).containsExactly(3L, 2L);
+        assertThat(searchService.search("red fork", 10)).isEmpty();
+    }
+
+    @Test
+    public void lastWordMatchesAsAPrefix() {
+        assertThat(ids(searchService.search("runn", 10))).containsExactly(1L, 4L);
+        assertThat(ids(searchService.search("red sh", 10))).containsExactly(1L, 3L, 4L, 2L);
+        // only the last word is typed incompletely
+        assertThat(searchService.search("sh red", 10)).isEmpty();
+    }
+
+    @Test
+    public void wholeWordBeatsALongerOne() {
+        assertThat(ids(searchService.search("sock", 10))).containsExactly(6L, 5L);
+    }
+
+    @Test
+    public void limitKeepsTheBest() {
+        assertThat(ids(searchService.search("red", 2))).containsExactly(1L, 3L);
+        assertThat(searchService.search("red", 0)).isEmpty();
+        assertThat(searchService.search("  ", 10)).isEmpty();
+        assertThat(searchService.search(null, 10)).isEmpty();
+    }
+
+    @Test
+    public void suggestionsCompleteTheLastWordMostCommonFirst() {
+        assertThat(searchService.suggest("red sh", 10)).containsExactly("red shirt", "red shoe", "red shorts");
+        assertThat(searchService.suggest("so", 1)).containsExactly("sock");
+        assertThat(searchService.suggest("xyz", 10)).isEmpty();
+    }
+
+    @Test
+    public void reindexedProductLosesItsOldTerms() {
+        searchService.index(productBuilder(1L, "Green Boot", "Hiking boot"));
+
+        assertThat(searchService.search("shoe", 10)).isEmpty();
+        assertThat(ids(searchService.search("red", 10))).containsExactly(3L, 2L, 4L);
+        assertThat(ids(searchService.search("boot", 10))).containsExactly(1L);
+        assertThat(searchService.suggest("sh", 10)).containsExactly("shirt", "shorts");
+        // the description still mentions running
+        assertThat(ids(searchService.search("running", 10))).containsExactly(4L);
+    }
+
+    @Test
+    public void newProductIsFoundWithoutARebuild() {
+        searchService.search("red", 10);
+
+        searchService.index(productBuilder(7L, "Red Hat", "Felt"));
+
+        assertThat(ids(searchService.search("red", 10))).containsExactly(1L, 3L, 7L, 2L, 4L);
+        assertThat(ids(searchService.search("hat", 10))).containsExactly(7L);
+    }
+
+    @Test
+    public void removedProductIsNotFound() {
+        searchService.remove(3L);
+        searchService.remove(3L);
+
+        assertThat(ids(searchService.search("red", 10))).containsExactly(1L, 2L, 4L);
+        assertThat(ids(searchService.search("shirt", 10))).containsExactly(2L);
+    }
+
+    @Test
+    public void catalogImportRebuildsTheIndex() {
+        when(productRepository.findAll()).thenReturn(Arrays.asList(productBuilder(9L, "Fork", "Stainless steel")));
+
+        searchService.catalogImported(new CatalogImportedEvent(null));
+
+        assertThat(searchService.search("red", 10)).isEmpty();
+        assertThat(ids(searchService.search("fork", 10))).containsExactly(9L);
+    }
+
+    @Test
+    public void accumulatorPoolStaysBounded() throws Exception {
+        int threads = SearchServiceImpl.MAX_POOLED_ACCUMULATORS * 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> results = new ArrayList<Future<List<Long>>>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<List<Long>>() {
+                    @Override
+                    public List<Long> call() throws Exception {
+                        start.await();
+                        List<Long> last = null;
+                        for (int i = 0; i < 200; i++) {
+                            last = ids(searchService.search("red sh", 10));
+                        }
+                        return last;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<List<Long>> result : results) {
+                assertThat(result.get(30, TimeUnit.SECONDS)).containsExactly(1L, 3L, 4L, 2L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(searchService.pooledAccumulators()).isBetween(1, SearchServiceImpl.MAX_POOLED_ACCUMULATORS);
+    }
+
+    @Test
+    public void resultsCarryTheCurrentRow() {
+        // a stock flush or an import changes the row without touching the index
+        rows.get(3L).setQuantity(0);
+        rows.get(3L).setPrice(new BigDecimal("9.99"));
+
+        Product found = searchService.search("red shirt", 1).get(0);
+
+        assertThat(found.getId()).isEqualTo(3L);
+        assertThat(found.getQuantity()).isEqualTo(0);
+        assertThat(found.getPrice()).isEqualByComparingTo("9.99");
+    }
+
+    @Test
+    public void productGoneFromTheTableIsLeftOut() {
+        rows.remove(1L);
+
+        assertThat(ids(searchService.search("red", 10))).containsExactly(3L, 2L, 4L);
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    private Product productBuilder(long id, String name, String desc) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setDesc(desc);
+        product.setPrice(BigDecimal.ONE);
+        product.setQuantity(5);
+        rows.put(id, product);
+        return product;
+    }
+}